@@ -0,0 +1,740 @@
+package com.demo.video.util;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 追加导出
+ * <br>在SimpleExport生成的已有Excel2007文件的指定sheet页末尾追加新行,不重新生成已有内容
+ * <br>已有的行不解析为POI对象:先生成去掉行数据、合并区域、下拉框和共享字符串的工作簿模板,
+ * 以流式导出生成新行(文本内联,不使用共享字符串表),再在ZIP层面拼接:原sheet页的行数据后接新行,
+ * 合并区域和下拉框为原有的加新增的,共享字符串表和其它sheet页直接复制原文件
+ * <br>限制:样式表、条件格式、超链接和图片锚点仍由POI读取并重新写出,其开销随这些内容的数量增长
+ * (样式数量受Excel上限约束,与行数无关)
+ * <br>用法:创建后通过getExport添加行(可使用getLastRowStyles获取已有样式),最后调用generate
+ */
+public class AppendExport {
+
+    private static final String WORKBOOK_ENTRY = "xl/workbook.xml";
+    private static final String WORKBOOK_RELS_ENTRY = "xl/_rels/workbook.xml.rels";
+
+    private static final String SHARED_STRINGS_TYPE = "/sharedStrings";
+
+    private static final byte[] SHEET_DATA_START = ascii("<sheetData");
+    private static final byte[] SHEET_DATA_END = ascii("</sheetData>");
+
+    private static final byte[] EMPTY_SHARED_STRINGS = ascii("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"0\" uniqueCount=\"0\"/>");
+
+    private static final Pattern COUNT = Pattern.compile("\\bcount=\"(\\d+)\"");
+
+    /**
+     * sheet页行数据之后、随已有内容增长的列表元素:不进入模板,拼接时原有的加新增的
+     * <br>按sheet页XML中的顺序排列,followers为其后可能出现的元素,用于确定插入位置
+     */
+    private static final ListElement[] LIST_ELEMENTS = {
+            new ListElement("mergeCells", "phoneticPr", "conditionalFormatting", "dataValidations", "hyperlinks",
+                    "printOptions", "pageMargins", "pageSetup", "headerFooter", "rowBreaks", "colBreaks",
+                    "customProperties", "cellWatches", "ignoredErrors", "smartTags", "drawing", "legacyDrawing",
+                    "legacyDrawingHF", "picture", "oleObjects", "controls", "webPublishItems", "tableParts", "extLst"),
+            new ListElement("dataValidations", "hyperlinks", "printOptions", "pageMargins", "pageSetup",
+                    "headerFooter", "rowBreaks", "colBreaks", "customProperties", "cellWatches", "ignoredErrors",
+                    "smartTags", "drawing", "legacyDrawing", "legacyDrawingHF", "picture", "oleObjects", "controls",
+                    "webPublishItems", "tableParts", "extLst")};
+
+    private static final String[] LIST_ELEMENT_NAMES = {"mergeCells", "dataValidations"};
+
+    /**
+     * 原文件
+     */
+    private final File source;
+
+    /**
+     * 目标sheet页及所有sheet页在ZIP中的路径
+     */
+    private String sheetEntry;
+    private Set<String> sheetEntries = new HashSet<String>();
+
+    /**
+     * 共享字符串表在ZIP中的路径,没有则为null
+     */
+    private String sharedStringsEntry;
+
+    /**
+     * 已有的行数(最后一行的行号)
+     */
+    private int lastRow = 0;
+
+    /**
+     * 最后一行各列的样式索引
+     */
+    private Map<Integer, Integer> lastRowStyleIndexes = new TreeMap<Integer, Integer>();
+
+    /**
+     * 工作簿模板临时文件,POI按需读取,关闭时删除
+     */
+    private File template;
+    private OPCPackage templatePackage;
+
+    /**
+     * 新行生成的工作簿临时文件
+     */
+    private File generated;
+
+    private SimpleExport export;
+
+    /**
+     * 追加导出构造(第一个sheet页)
+     *
+     * @param source 已有Excel2007文件
+     */
+    public AppendExport(File source) throws IOException {
+        this(source, null);
+    }
+
+    /**
+     * 追加导出构造
+     *
+     * @param source    已有Excel2007文件
+     * @param sheetName 追加的sheet页名称,为null则为第一个sheet页
+     */
+    public AppendExport(File source, String sheetName) throws IOException {
+        this.source = source;
+        template = File.createTempFile("append", ".xlsx");
+        XSSFWorkbook xssf;
+        boolean opened = false;
+        ZipFile zip = new ZipFile(source);
+        try {
+            sheetName = resolveSheets(zip, sheetName);
+            scanLastRow(zip);
+            writeTemplate(zip, template);
+            //按文件打开:各部分按需读取,不整体载入内存
+            templatePackage = OPCPackage.open(template, PackageAccess.READ_WRITE);
+            xssf = new XSSFWorkbook(templatePackage);
+            opened = true;
+        } catch (XMLStreamException e) {
+            throw new IOException("文件格式错误:" + source, e);
+        } catch (InvalidFormatException e) {
+            throw new IOException("文件格式错误:" + source, e);
+        } finally {
+            IOUtils.closeQuietly(zip);
+            if (!opened) {
+                closeTemplate();
+            }
+        }
+        generated = File.createTempFile("append", ".xlsx");
+        export = new SimpleExport(new SXSSFWorkbook(xssf), new FileOutputStream(generated), sheetName);
+        //默认使用最后一行第一个单元格的样式
+        CellStyle[] styles = getLastRowStyles();
+        if (styles.length > 0 && styles[0] != null) {
+            export.setMainTitleStyle(styles[0]);
+            export.setDeputyTitleStyle(styles[0]);
+            export.setContentStyle(styles[0]);
+        }
+    }
+
+    /**
+     * 导出对象:通过createRow等方法添加新行
+     */
+    public SimpleExport getExport() {
+        return export;
+    }
+
+    /**
+     * 已有的行数(最后一行的行号),新行从下一行开始
+     */
+    public int getLastRow() {
+        return lastRow;
+    }
+
+    /**
+     * 最后一行各列的样式,没有单元格的列为null
+     */
+    public CellStyle[] getLastRowStyles() {
+        int columns = lastRowStyleIndexes.isEmpty() ? 0 : ((TreeMap<Integer, Integer>) lastRowStyleIndexes).lastKey() + 1;
+        CellStyle[] styles = new CellStyle[columns];
+        for (Map.Entry<Integer, Integer> entry : lastRowStyleIndexes.entrySet()) {
+            styles[entry.getKey()] = export.getWorkbook().getCellStyleAt(entry.getValue().shortValue());
+        }
+        return styles;
+    }
+
+    /**
+     * 生成追加后的文件
+     * <br>先写入临时文件,完成后原子替换目标文件,目标文件可以是原文件
+     *
+     * @param target 目标文件
+     */
+    public void generate(File target) throws IOException {
+        try {
+            export.excelGenerate(new int[]{0, lastRow});
+        } finally {
+            export.close();
+        }
+        File temp = new File(target.getPath() + ".tmp");
+        OutputStream os = new FileOutputStream(temp);
+        try {
+            splice(os);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(os);
+            temp.delete();
+            throw e;
+        } catch (RuntimeException e) {
+            IOUtils.closeQuietly(os);
+            temp.delete();
+            throw e;
+        }
+        os.close();
+        close();
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * 删除临时文件
+     */
+    public void close() {
+        export.close();
+        closeTemplate();
+        if (generated != null) {
+            generated.delete();
+            generated = null;
+        }
+    }
+
+    /**
+     * 关闭模板(不保存)并删除
+     */
+    private void closeTemplate() {
+        if (templatePackage != null) {
+            templatePackage.revert();
+            templatePackage = null;
+        }
+        if (template != null) {
+            template.delete();
+            template = null;
+        }
+    }
+
+    // ----------------------------------------读取原文件----------------------------------------
+
+    /**
+     * 读取工作簿及其关系,确定sheet页在ZIP中的路径
+     *
+     * @param zip       原文件
+     * @param sheetName sheet页名称,为null则为第一个sheet页
+     * @return sheet页名称
+     */
+    private String resolveSheets(ZipFile zip, String sheetName) throws IOException, XMLStreamException {
+        //关系ID-路径
+        Map<String, String> targets = new HashMap<String, String>();
+        XMLStreamReader reader = openReader(zip, WORKBOOK_RELS_ENTRY);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "Relationship".equals(reader.getLocalName())) {
+                    String target = reader.getAttributeValue(null, "Target");
+                    target = target.startsWith("/") ? target.substring(1) : "xl/" + target;
+                    targets.put(reader.getAttributeValue(null, "Id"), target);
+                    String type = reader.getAttributeValue(null, "Type");
+                    if (type != null && type.endsWith(SHARED_STRINGS_TYPE)) {
+                        sharedStringsEntry = target;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        reader = openReader(zip, WORKBOOK_ENTRY);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT || !"sheet".equals(reader.getLocalName())) {
+                    continue;
+                }
+                String name = reader.getAttributeValue(null, "name");
+                String entry = null;
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    if ("id".equals(reader.getAttributeLocalName(i)) && !"".equals(reader.getAttributeNamespace(i))) {
+                        entry = targets.get(reader.getAttributeValue(i));
+                    }
+                }
+                if (entry == null) {
+                    throw new IllegalStateException("工作簿格式错误:sheet页" + name + "缺少关系");
+                }
+                sheetEntries.add(entry);
+                if (sheetEntry == null && (sheetName == null || sheetName.equals(name))) {
+                    sheetEntry = entry;
+                    sheetName = name;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (sheetEntry == null) {
+            throw new IllegalStateException("sheet页不存在:" + sheetName);
+        }
+        return sheetName;
+    }
+
+    /**
+     * 扫描目标sheet页:最后一行的行号及各列样式
+     *
+     * @param zip 原文件
+     */
+    private void scanLastRow(ZipFile zip) throws IOException, XMLStreamException {
+        XMLStreamReader reader = openReader(zip, sheetEntry);
+        try {
+            int column = -1;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if ("row".equals(name)) {
+                    String r = reader.getAttributeValue(null, "r");
+                    lastRow = r != null ? Integer.parseInt(r) : lastRow + 1;
+                    lastRowStyleIndexes.clear();
+                    column = -1;
+                } else if ("c".equals(name)) {
+                    String r = reader.getAttributeValue(null, "r");
+                    column = r != null ? new CellReference(r).getCol() : column + 1;
+                    String s = reader.getAttributeValue(null, "s");
+                    lastRowStyleIndexes.put(column, s != null ? Integer.parseInt(s) : 0);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * 生成工作簿模板:所有sheet页去掉行数据、合并区域和下拉框,共享字符串表清空,其它内容不变
+     *
+     * @param zip      原文件
+     * @param template 模板文件
+     */
+    private void writeTemplate(ZipFile zip, File template) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(template));
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                zos.putNextEntry(new ZipEntry(entry.getName()));
+                InputStream is = zip.getInputStream(entry);
+                try {
+                    if (sheetEntries.contains(entry.getName())) {
+                        XmlSplicer splicer = new XmlSplicer(is);
+                        if (!splicer.transfer(SHEET_DATA_START, zos)) {
+                            throw new IllegalStateException("sheet页格式错误:" + entry.getName());
+                        }
+                        if (!splicer.skipTagEnd()) {
+                            splicer.transfer(SHEET_DATA_END, null);
+                        }
+                        zos.write(ascii("<sheetData/>"));
+                        for (String name = splicer.transferTag(LIST_ELEMENT_NAMES, zos); name != null;
+                             name = splicer.transferTag(LIST_ELEMENT_NAMES, zos)) {
+                            if (!splicer.readTagEnd().endsWith("/")) {
+                                splicer.transfer(ascii("</" + name + ">"), null);
+                            }
+                        }
+                    } else if (entry.getName().equals(sharedStringsEntry)) {
+                        //新行使用内联文本,原有的共享字符串表在拼接时直接复制
+                        zos.write(EMPTY_SHARED_STRINGS);
+                    } else {
+                        IOUtils.copy(is, zos);
+                    }
+                } finally {
+                    IOUtils.closeQuietly(is);
+                }
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+    }
+
+    // ----------------------------------------拼接----------------------------------------
+
+    /**
+     * 拼接:以新生成的工作簿为准,目标sheet页为原行数据+新行,其它sheet页及共享字符串表使用原文件
+     *
+     * @param os 输出流
+     */
+    private void splice(OutputStream os) throws IOException {
+        ZipFile original = new ZipFile(source);
+        ZipFile generatedZip = new ZipFile(generated);
+        try {
+            ZipOutputStream zos = new ZipOutputStream(os);
+            Enumeration<? extends ZipEntry> entries = generatedZip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                zos.putNextEntry(new ZipEntry(name));
+                if (sheetEntry.equals(name)) {
+                    spliceSheet(original.getInputStream(original.getEntry(name)), generatedZip.getInputStream(entry), zos);
+                } else if ((sheetEntries.contains(name) || name.equals(sharedStringsEntry)) && original.getEntry(name) != null) {
+                    copy(original.getInputStream(original.getEntry(name)), zos);
+                } else {
+                    copy(generatedZip.getInputStream(entry), zos);
+                }
+                zos.closeEntry();
+            }
+            zos.finish();
+        } finally {
+            IOUtils.closeQuietly(original);
+            IOUtils.closeQuietly(generatedZip);
+        }
+    }
+
+    /**
+     * 拼接sheet页:原文件的头部(去掉尺寸)和行数据,新行,新生成的尾部
+     * <br>尾部的合并区域、下拉框为原文件的(按字节复制)加新增的
+     *
+     * @param original  原sheet页
+     * @param generated 新生成的sheet页
+     * @param os        输出流
+     */
+    private void spliceSheet(InputStream original, InputStream generated, OutputStream os) throws IOException {
+        try {
+            XmlSplicer originalSplicer = new XmlSplicer(original);
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            if (!originalSplicer.transfer(SHEET_DATA_START, header)) {
+                throw new IllegalStateException("sheet页格式错误:" + sheetEntry);
+            }
+            //尺寸在追加后失效
+            os.write(header.toString("UTF-8").replaceAll("<dimension[^>]*/>", "").getBytes("UTF-8"));
+            os.write(ascii("<sheetData>"));
+            if (!originalSplicer.skipTagEnd()) {
+                originalSplicer.transfer(SHEET_DATA_END, os);
+            }
+
+            XmlSplicer generatedSplicer = new XmlSplicer(generated);
+            if (!generatedSplicer.transfer(SHEET_DATA_START, null)) {
+                throw new IllegalStateException("sheet页格式错误:" + sheetEntry);
+            }
+            if (!generatedSplicer.skipTagEnd()) {
+                generatedSplicer.transfer(SHEET_DATA_END, os);
+            }
+            os.write(SHEET_DATA_END);
+            ByteArrayOutputStream tail = new ByteArrayOutputStream();
+            generatedSplicer.transferRest(tail);
+            spliceTail(originalSplicer, tail.toString("UTF-8"), os);
+        } finally {
+            IOUtils.closeQuietly(original);
+            IOUtils.closeQuietly(generated);
+        }
+    }
+
+    /**
+     * 拼接sheet页尾部:新生成的尾部中按顺序放入合并后的列表元素
+     *
+     * @param original 原sheet页,位于行数据之后
+     * @param tail     新生成的尾部(不含原有的合并区域、下拉框,内容较少)
+     * @param os       输出流
+     */
+    private void spliceTail(XmlSplicer original, String tail, OutputStream os) throws IOException {
+        String found = original.transferTag(LIST_ELEMENT_NAMES, null);
+        int written = 0;
+        for (ListElement element : LIST_ELEMENTS) {
+            int start = indexOfTag(tail, element.name, written);
+            int end;
+            String items = "";
+            int count = 0;
+            if (start >= 0) {
+                int tagEnd = tail.indexOf('>', start);
+                String startTag = tail.substring(start, tagEnd + 1);
+                if (startTag.endsWith("/>")) {
+                    end = tagEnd + 1;
+                } else {
+                    int close = tail.indexOf("</" + element.name + ">", tagEnd);
+                    items = tail.substring(tagEnd + 1, close);
+                    end = close + element.name.length() + 3;
+                }
+                count = count(startTag);
+            } else {
+                //新生成的没有该元素:插入到其后的第一个元素之前
+                start = tail.lastIndexOf("</worksheet>");
+                start = start >= 0 ? start : tail.length();
+                for (String follower : element.followers) {
+                    int index = indexOfTag(tail, follower, written);
+                    if (index >= 0 && index < start) {
+                        start = index;
+                    }
+                }
+                end = start;
+            }
+            os.write(tail.substring(written, start).getBytes("UTF-8"));
+            written = end;
+            if (element.name.equals(found)) {
+                String attributes = original.readTagEnd();
+                int originalCount = count(attributes);
+                os.write(ascii("<" + element.name + (originalCount >= 0 && count >= 0
+                        ? " count=\"" + (originalCount + count) + "\"" : "") + ">"));
+                if (!attributes.endsWith("/")) {
+                    original.transfer(ascii("</" + element.name + ">"), os);
+                }
+                os.write(items.getBytes("UTF-8"));
+                os.write(ascii("</" + element.name + ">"));
+                found = original.transferTag(LIST_ELEMENT_NAMES, null);
+            } else {
+                os.write(tail.substring(start, end).getBytes("UTF-8"));
+            }
+        }
+        os.write(tail.substring(written).getBytes("UTF-8"));
+    }
+
+    /**
+     * 查找开始标签的位置
+     *
+     * @param xml  XML文本
+     * @param name 元素名
+     * @param from 开始位置
+     * @return 没有则为-1
+     */
+    private static int indexOfTag(String xml, String name, int from) {
+        String tag = "<" + name;
+        for (int index = xml.indexOf(tag, from); index >= 0; index = xml.indexOf(tag, index + 1)) {
+            int next = index + tag.length();
+            if (next < xml.length() && " \t\r\n/>".indexOf(xml.charAt(next)) >= 0) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 开始标签中的count属性,没有则为-1
+     */
+    private static int count(String tag) {
+        Matcher matcher = COUNT.matcher(tag);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    /**
+     * sheet页中的列表元素
+     */
+    private static class ListElement {
+
+        private final String name;
+        private final String[] followers;
+
+        ListElement(String name, String... followers) {
+            this.name = name;
+            this.followers = followers;
+        }
+    }
+
+    /**
+     * 按字节拆分XML:查找ASCII标记,标记之前的内容写出或丢弃
+     */
+    private static class XmlSplicer {
+
+        private static final byte[] TAG_START = ascii("<");
+
+        private final InputStream in;
+        private final byte[] buf = new byte[1 << 16];
+        private int pos;
+        private int limit;
+
+        /**
+         * 输出缓冲
+         */
+        private final byte[] obuf = new byte[1 << 16];
+        private int opos;
+
+        XmlSplicer(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * 读取到标记为止
+         *
+         * @param marker 标记,第一个字节不能在标记中重复出现
+         * @param out    标记之前内容的输出,为null则丢弃
+         * @return 是否找到标记,标记本身不输出
+         */
+        boolean transfer(byte[] marker, OutputStream out) throws IOException {
+            int matched = 0;
+            while (true) {
+                if (pos == limit && !fill()) {
+                    write(out, marker, matched);
+                    flush(out);
+                    return false;
+                }
+                byte b = buf[pos++];
+                if (b == marker[matched]) {
+                    if (++matched == marker.length) {
+                        flush(out);
+                        return true;
+                    }
+                    continue;
+                }
+                if (matched > 0) {
+                    write(out, marker, matched);
+                    matched = b == marker[0] ? 1 : 0;
+                    if (matched == 1) {
+                        continue;
+                    }
+                }
+                if (out != null) {
+                    obuf[opos++] = b;
+                    if (opos == obuf.length) {
+                        flush(out);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 读取到下一个指定名称的开始标签为止
+         *
+         * @param names 元素名
+         * @param out   标签之前内容的输出,为null则丢弃
+         * @return 找到的元素名,标签的"<"和元素名不输出;没有则为null
+         */
+        String transferTag(String[] names, OutputStream out) throws IOException {
+            while (transfer(TAG_START, out)) {
+                //元素名:到空白、"/"或">"为止
+                StringBuilder name = new StringBuilder();
+                while (pos < limit || fill()) {
+                    byte b = buf[pos];
+                    if (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '/' || b == '>') {
+                        break;
+                    }
+                    name.append((char) b);
+                    pos++;
+                }
+                for (String candidate : names) {
+                    if (candidate.contentEquals(name)) {
+                        flush(out);
+                        return candidate;
+                    }
+                }
+                write(out, TAG_START, 1);
+                write(out, ascii(name.toString()), name.length());
+            }
+            return null;
+        }
+
+        /**
+         * 读取当前开始标签的剩余部分(不含">")
+         *
+         * @return 属性部分,自闭合标签以"/"结尾
+         */
+        String readTagEnd() throws IOException {
+            ByteArrayOutputStream tag = new ByteArrayOutputStream();
+            while (pos < limit || fill()) {
+                byte b = buf[pos++];
+                if (b == '>') {
+                    return tag.toString("UTF-8");
+                }
+                tag.write(b);
+            }
+            throw new IllegalStateException("sheet页格式错误:标签未结束");
+        }
+
+        /**
+         * 跳过当前开始标签的剩余部分
+         *
+         * @return 是否为自闭合标签
+         */
+        boolean skipTagEnd() throws IOException {
+            byte previous = 0;
+            while (pos < limit || fill()) {
+                byte b = buf[pos++];
+                if (b == '>') {
+                    return previous == '/';
+                }
+                previous = b;
+            }
+            throw new IllegalStateException("sheet页格式错误:标签未结束");
+        }
+
+        /**
+         * 输出剩余内容
+         */
+        void transferRest(OutputStream out) throws IOException {
+            if (pos < limit) {
+                out.write(buf, pos, limit - pos);
+                pos = limit;
+            }
+            IOUtils.copy(in, out);
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buf);
+            pos = 0;
+            limit = Math.max(n, 0);
+            return n > 0;
+        }
+
+        private void write(OutputStream out, byte[] bytes, int len) throws IOException {
+            if (out == null) {
+                return;
+            }
+            for (int i = 0; i < len; i++) {
+                obuf[opos++] = bytes[i];
+                if (opos == obuf.length) {
+                    flush(out);
+                }
+            }
+        }
+
+        private void flush(OutputStream out) throws IOException {
+            if (out != null && opos > 0) {
+                out.write(obuf, 0, opos);
+            }
+            opos = 0;
+        }
+    }
+
+    // ----------------------------------------工具函数----------------------------------------
+
+    private static XMLStreamReader openReader(ZipFile zip, String entry) throws IOException, XMLStreamException {
+        ZipEntry zipEntry = zip.getEntry(entry);
+        if (zipEntry == null) {
+            throw new IllegalStateException("文件缺少" + entry);
+        }
+        return XMLInputFactory.newInstance().createXMLStreamReader(new BufferedInputStream(zip.getInputStream(zipEntry)));
+    }
+
+    private static void copy(InputStream is, OutputStream os) throws IOException {
+        try {
+            IOUtils.copy(is, os);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    private static byte[] ascii(String str) {
+        try {
+            return str.getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
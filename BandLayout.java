@@ -0,0 +1,331 @@
+package com.demo.video.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 分段并行合并计算
+ * <br>行合并只影响其下方的行,在没有合并单元格跨越的行处把数据容器切分为互不影响的分段,
+ * 各分段使用独立的占用记录表并行计算单元格坐标,再按分段顺序累加行偏移
+ * <br>切分位置按数据容器行号预估,计算后校验:分段末尾有单元格越过下一分段起点(被挤压换行等),
+ * 或超出记录表范围等与顺序计算结果可能不一致的情况,返回false由调用方改为顺序计算
+ * <br>只计算坐标,写入单元格仍由调用方在单线程中完成;坐标为表格内坐标,不含起始位置偏移
+ */
+class BandLayout {
+
+    /**
+     * 检查取消的间隔行数
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 64;
+
+    /**
+     * 表格列数
+     */
+    private final int columns;
+
+    /**
+     * 行数、单元格数
+     */
+    private int rowCount = 0;
+    private int cellCount = 0;
+
+    /**
+     * 各行第一个单元格的位置,长度为行数+1
+     */
+    private int[] rowOffsets = new int[1025];
+
+    /**
+     * 各行的数据表行数,不是数据表为-1
+     */
+    private int[] tableRows = new int[1024];
+
+    /**
+     * 单元格列合并增量、行合并增量
+     */
+    private int[] colIncrements = new int[4096];
+    private int[] rowIncrements = new int[4096];
+
+    /**
+     * 计算结果:各行的起始行(行高所在行)、结束行(公式引用行),单元格的行、列
+     */
+    private int[] rowStarts;
+    private int[] rowEnds;
+    private int[] cellRows;
+    private int[] cellCols;
+
+    /**
+     * 取消令牌
+     */
+    private ExportCancelToken cancelToken;
+
+    /**
+     * 分段并行合并计算构造
+     *
+     * @param columns 表格列数
+     */
+    BandLayout(int columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * 添加一行
+     *
+     * @param row 数据容器中的行:{值,列合并增量,行合并增量,样式}
+     */
+    void addRow(Object[][] row) {
+        ColumnTable table = ColumnTable.fromRow(row);
+        ensureRowCapacity();
+        if (table != null) {
+            tableRows[rowCount] = table.getRowCount();
+        } else {
+            tableRows[rowCount] = -1;
+            if (cellCount + row.length > colIncrements.length) {
+                int capacity = Math.max(colIncrements.length * 2, cellCount + row.length);
+                colIncrements = Arrays.copyOf(colIncrements, capacity);
+                rowIncrements = Arrays.copyOf(rowIncrements, capacity);
+            }
+            for (int j = 0; j < row.length; j++) {
+                colIncrements[cellCount] = (Integer) row[j][1];
+                rowIncrements[cellCount] = (Integer) row[j][2];
+                cellCount++;
+            }
+        }
+        rowOffsets[++rowCount] = cellCount;
+    }
+
+    private void ensureRowCapacity() {
+        if (rowCount + 1 >= tableRows.length) {
+            tableRows = Arrays.copyOf(tableRows, tableRows.length * 2);
+            rowOffsets = Arrays.copyOf(rowOffsets, tableRows.length + 1);
+        }
+    }
+
+    /**
+     * 切分并计算
+     *
+     * @param pool        线程池
+     * @param minBandRows 分段最小行数
+     * @param maxRows     记录表行数:顺序计算时查找空闲位置的范围
+     * @param cancelToken 取消令牌
+     * @return 是否计算成功,只有一个分段或结果可能与顺序计算不一致时返回false
+     */
+    boolean compute(ForkJoinPool pool, int minBandRows, int maxRows, ExportCancelToken cancelToken) {
+        this.cancelToken = cancelToken;
+        final List<Band> bands = split(minBandRows);
+        if (bands.size() < 2) {
+            return false;
+        }
+        rowStarts = new int[rowCount];
+        rowEnds = new int[rowCount];
+        cellRows = new int[cellCount];
+        cellCols = new int[cellCount];
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(bands);
+            }
+        });
+        //按顺序累加各分段的起始行,并校验分段之间互不影响
+        int base = 0;
+        int recordRows = 0;
+        for (int b = 0; b < bands.size(); b++) {
+            Band band = bands.get(b);
+            boolean last = b == bands.size() - 1;
+            if (band.failed || (!last && band.spilled)) {
+                return false;
+            }
+            for (int i = band.from; i < band.to; i++) {
+                rowStarts[i] += base;
+                rowEnds[i] += base;
+            }
+            for (int k = rowOffsets[band.from]; k < rowOffsets[band.to]; k++) {
+                cellRows[k] += base;
+            }
+            base += band.height;
+            recordRows += last ? band.usedRows : band.recordRows;
+        }
+        return recordRows <= maxRows;
+    }
+
+    /**
+     * 按行号预估切分位置:当前分段已达到最小行数,且分段内的行合并都在下一行之前结束
+     *
+     * @param minBandRows 分段最小行数
+     */
+    private List<Band> split(int minBandRows) {
+        List<Band> bands = new ArrayList<Band>();
+        int from = 0;
+        //分段内行合并到达的最远行(相对分段起点)
+        int reach = -1;
+        for (int i = 0; i < rowCount; i++) {
+            if (i - from >= minBandRows && i - from > reach) {
+                bands.add(new Band(from, i));
+                from = i;
+                reach = -1;
+            }
+            for (int k = rowOffsets[i]; k < rowOffsets[i + 1]; k++) {
+                reach = Math.max(reach, i - from + rowIncrements[k]);
+            }
+        }
+        if (from < rowCount) {
+            bands.add(new Band(from, rowCount));
+        }
+        return bands;
+    }
+
+    int getRowStart(int row) {
+        return rowStarts[row];
+    }
+
+    int getRowEnd(int row) {
+        return rowEnds[row];
+    }
+
+    int getCellRow(int row, int column) {
+        return cellRows[rowOffsets[row] + column];
+    }
+
+    int getCellCol(int row, int column) {
+        return cellCols[rowOffsets[row] + column];
+    }
+
+    /**
+     * 分段:与顺序计算相同的放置规则,使用分段内的占用记录表
+     */
+    private class Band extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 数据容器行范围[from,to)
+         */
+        private final int from;
+        private final int to;
+
+        /**
+         * 占用记录表(按需增长)
+         */
+        private byte[][] record = new byte[64][];
+
+        /**
+         * 计算结果:下一分段的起始记录行、已占用的记录行数、占用的表格行数(含数据表)
+         */
+        private int recordRows;
+        private int usedRows;
+        private int height;
+
+        /**
+         * 有单元格越过下一分段起点
+         */
+        private boolean spilled;
+
+        /**
+         * 无法按顺序计算的规则放置(超出列数等)
+         */
+        private boolean failed;
+
+        Band(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            // 当前行
+            int row = 0;
+            // 数据表占用的表格行数
+            int shift = 0;
+            for (int i = from; i < to; i++) {
+                //定期检查是否已取消
+                if ((i - from) % CANCEL_CHECK_INTERVAL == 0) {
+                    cancelToken.checkCancelled();
+                }
+                if (tableRows[i] >= 0) {
+                    //数据表:放在当前行之后第一个完全空闲的行
+                    while (!isFreeRow(row)) {
+                        row++;
+                    }
+                    rowStarts[i] = shift + row;
+                    rowEnds[i] = shift + row;
+                    shift += tableRows[i];
+                    continue;
+                }
+                rowStarts[i] = shift + row;
+                // 当前列
+                int col = 0;
+                for (int k = rowOffsets[i]; k < rowOffsets[i + 1]; k++) {
+                    // 检查占用，获取可用位置
+                    if (col >= columns) {
+                        failed = true;
+                        return;
+                    }
+                    int m = row;
+                    int n = col;
+                    while (!isFree(m, n)) {
+                        if (++n == columns) {
+                            n = col;
+                            m++;
+                        }
+                    }
+                    row = m;
+                    col = n;
+                    if (col + colIncrements[k] >= columns) {
+                        failed = true;
+                        return;
+                    }
+                    // 写入占位
+                    for (int r = row; r <= row + rowIncrements[k]; r++) {
+                        byte[] cells = getRecordRow(r);
+                        for (int c = col; c <= col + colIncrements[k]; c++) {
+                            cells[c] = 1;
+                        }
+                    }
+                    usedRows = Math.max(usedRows, row + rowIncrements[k] + 1);
+                    cellRows[k] = shift + row;
+                    cellCols[k] = col;
+                    //当前列位置计算
+                    col += colIncrements[k] + 1;
+                }
+                rowEnds[i] = shift + row;
+                //当前行位置计算
+                ++row;
+            }
+            recordRows = row;
+            spilled = usedRows > row;
+            usedRows = Math.max(usedRows, row);
+            height = row + shift;
+            record = null;
+        }
+
+        private boolean isFree(int row, int col) {
+            return row >= record.length || record[row] == null || record[row][col] == 0;
+        }
+
+        private boolean isFreeRow(int row) {
+            if (row >= record.length || record[row] == null) {
+                return true;
+            }
+            for (int n = 0; n < columns; n++) {
+                if (record[row][n] != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private byte[] getRecordRow(int row) {
+            if (row >= record.length) {
+                record = Arrays.copyOf(record, Math.max(record.length * 2, row + 1));
+            }
+            if (record[row] == null) {
+                record[row] = new byte[columns];
+            }
+            return record[row];
+        }
+    }
+
+}
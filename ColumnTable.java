@@ -0,0 +1,143 @@
+package com.demo.video.util;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 列式数据表
+ * <br>按列传入基本类型数组(double[]、long[]、int[])或String[],每列一个样式,通过SimpleExport.createTable添加
+ * <br>表格区域没有合并单元格,合并计算时整块写入单元格,不装箱、不创建单元格元组、不记录单元格占用
+ */
+public class ColumnTable {
+
+    /**
+     * 列类型
+     */
+    static final byte TYPE_DOUBLE = 0;
+    static final byte TYPE_LONG = 1;
+    static final byte TYPE_INT = 2;
+    static final byte TYPE_STRING = 3;
+
+    /**
+     * 行数
+     */
+    private final int rowCount;
+
+    /**
+     * 列数据:double[]、long[]、int[]、String[]
+     */
+    private final List<Object> columns = new ArrayList<Object>();
+
+    /**
+     * 列类型
+     */
+    private final List<Byte> types = new ArrayList<Byte>();
+
+    /**
+     * 列样式
+     */
+    private final List<CellStyle> styles = new ArrayList<CellStyle>();
+
+    /**
+     * 列式数据表构造
+     *
+     * @param rowCount 行数,每列数组长度必须相同
+     */
+    public ColumnTable(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * 添加数值列
+     *
+     * @param values    列数据
+     * @param cellStyle 列样式,为null则使用默认样式
+     */
+    public void addColumn(double[] values, CellStyle cellStyle) {
+        addColumn(values, values.length, TYPE_DOUBLE, cellStyle);
+    }
+
+    /**
+     * 添加整数列
+     *
+     * @param values    列数据
+     * @param cellStyle 列样式,为null则使用默认样式
+     */
+    public void addColumn(long[] values, CellStyle cellStyle) {
+        addColumn(values, values.length, TYPE_LONG, cellStyle);
+    }
+
+    /**
+     * 添加整数列
+     *
+     * @param values    列数据
+     * @param cellStyle 列样式,为null则使用默认样式
+     */
+    public void addColumn(int[] values, CellStyle cellStyle) {
+        addColumn(values, values.length, TYPE_INT, cellStyle);
+    }
+
+    /**
+     * 添加文本列
+     *
+     * @param values    列数据,null为空单元格
+     * @param cellStyle 列样式,为null则使用默认样式
+     */
+    public void addColumn(String[] values, CellStyle cellStyle) {
+        addColumn(values, values.length, TYPE_STRING, cellStyle);
+    }
+
+    private void addColumn(Object values, int length, byte type, CellStyle cellStyle) {
+        if (length != rowCount) {
+            throw new IllegalStateException("第" + (columns.size() + 1) + "列长度" + length + "与行数" + rowCount + "不一致");
+        }
+        columns.add(values);
+        types.add(type);
+        styles.add(cellStyle);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    Object getColumn(int column) {
+        return columns.get(column);
+    }
+
+    byte getType(int column) {
+        return types.get(column);
+    }
+
+    CellStyle getStyle(int column) {
+        return styles.get(column);
+    }
+
+    // ----------------------------------------数据容器----------------------------------------
+
+    /**
+     * 数据容器中的占位行:只有一个单元素元组,元素为数据表
+     */
+    Object[][] toRow() {
+        return new Object[][]{new Object[]{this}};
+    }
+
+    /**
+     * 数据容器中的行是否为数据表占位行
+     *
+     * @param columns 数据容器中的行
+     * @return 数据表,不是占位行返回null
+     */
+    static ColumnTable fromRow(Object[][] columns) {
+        if (columns.length == 1 && columns[0].length == 1 && columns[0][0] instanceof ColumnTable) {
+            return (ColumnTable) columns[0][0];
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,305 @@
+package com.demo.video.util;
+
+import org.apache.poi.util.IOUtils;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 批量导出压缩包
+ * <br>多个工作簿依次作为ZIP条目直接写入输出流(如响应流),每个工作簿生成后立即释放,内存峰值为一个工作簿
+ * <br>并行度大于1时工作簿在线程池中并行生成到临时文件,再按添加顺序写入压缩包,内存峰值为并行度个工作簿
+ * <br>用法:依次调用add添加工作簿,最后调用finish;出错或中止时调用close
+ */
+public class ExportBundle {
+
+    /**
+     * 压缩包输出流
+     */
+    private final ZipOutputStream zos;
+
+    /**
+     * 已使用的条目名称
+     */
+    private final Set<String> entryNames = new HashSet<String>();
+
+    /**
+     * 取消标记:所有工作簿共用,为压缩包自有的标记(传入的标记作为上级)
+     */
+    private ExportCancelToken cancelToken = new ExportCancelToken();
+
+    /**
+     * 数据容器内存中保留的最大行数
+     */
+    private int spillThreshold = 0;
+
+    /**
+     * 并行生成的线程池,为null则在当前线程中依次生成
+     */
+    private ExecutorService executor;
+
+    /**
+     * 并行生成中的工作簿,按添加顺序写入
+     */
+    private final LinkedList<PendingEntry> pending = new LinkedList<PendingEntry>();
+
+    /**
+     * 批量导出压缩包构造
+     *
+     * @param response 响应对象
+     * @param fileName 压缩包文件名（不含后缀）
+     */
+    public ExportBundle(HttpServletResponse response, String fileName) throws IOException {
+        response.setHeader("Content-disposition",
+                "attachment;filename=" + new String((fileName + ".zip").getBytes("gb2312"), "ISO8859-1"));
+        response.setContentType("application/zip");
+        this.zos = new ZipOutputStream(response.getOutputStream());
+    }
+
+    /**
+     * 批量导出压缩包构造
+     *
+     * @param os 输出流
+     */
+    public ExportBundle(OutputStream os) {
+        this.zos = new ZipOutputStream(os);
+    }
+
+    /**
+     * 设置并行度
+     * <br>大于1时工作簿在线程池中并行生成到临时文件,按添加顺序写入压缩包;须在添加工作簿之前调用
+     *
+     * @param parallelism 并行生成的工作簿数,小于等于1则依次生成（默认）
+     */
+    public void setParallelism(int parallelism) {
+        if (!entryNames.isEmpty()) {
+            throw new IllegalStateException("已添加工作簿,不能修改并行度");
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        if (parallelism > 1) {
+            executor = Executors.newFixedThreadPool(parallelism);
+        }
+    }
+
+    /**
+     * 设置取消标记:取消后停止生成并中止压缩包
+     * <br>压缩包关闭或线程中断时只取消压缩包自己的下级标记,不会取消传入的标记
+     */
+    public void setCancelToken(ExportCancelToken cancelToken) {
+        this.cancelToken = new ExportCancelToken(cancelToken);
+    }
+
+    /**
+     * 设置各工作簿数据容器内存中保留的最大行数
+     *
+     * @see SimpleExport#setSpillThreshold(int)
+     */
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * 添加工作簿
+     * <br>依次生成时在当前线程中生成并写入压缩包;并行生成时提交到线程池,并写出之前已生成完成的工作簿
+     *
+     * @param fileName         条目文件名（不含后缀）,重名时自动添加序号
+     * @param excelVersionEnum Excel版本
+     * @param task             导出内容,不需要调用excelGenerate
+     */
+    public void add(String fileName, SimpleExport.ExcelVersionEnum excelVersionEnum, ExportJobManager.ExportTask task) throws IOException {
+        String entryName = uniqueEntryName(fileName, excelVersionEnum.getSuffix());
+        cancelToken.checkCancelled();
+        if (executor == null) {
+            zos.putNextEntry(new ZipEntry(entryName));
+            SimpleExport export = new SimpleExport(nonClosing(zos), excelVersionEnum, "sheet1");
+            generate(export, task);
+            zos.closeEntry();
+            return;
+        }
+        PendingEntry entry = new PendingEntry(entryName, excelVersionEnum, task);
+        entry.future = executor.submit(entry);
+        pending.add(entry);
+        writeCompleted(false);
+    }
+
+    /**
+     * 完成:等待所有工作簿生成并写入,结束压缩包
+     */
+    public void finish() throws IOException {
+        try {
+            writeCompleted(true);
+            zos.finish();
+            zos.flush();
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * 关闭:取消未完成的工作簿,删除临时文件并关闭输出流
+     */
+    public void close() {
+        shutdown();
+        IOUtils.closeQuietly(zos);
+    }
+
+    // ----------------------------------------执行函数----------------------------------------
+
+    /**
+     * 生成工作簿:创建数据后生成,完成后释放
+     *
+     * @param export 导出对象
+     * @param task   导出内容
+     */
+    private void generate(SimpleExport export, ExportJobManager.ExportTask task) throws IOException {
+        try {
+            export.setCancelToken(cancelToken);
+            export.setSpillThreshold(spillThreshold);
+            task.prepare(export);
+            export.excelGenerate();
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("生成工作簿失败", e);
+        } finally {
+            export.close();
+        }
+    }
+
+    /**
+     * 按添加顺序写出已生成完成的工作簿
+     *
+     * @param wait 是否等待未完成的工作簿
+     */
+    private void writeCompleted(boolean wait) throws IOException {
+        while (!pending.isEmpty() && (wait || pending.getFirst().future.isDone())) {
+            PendingEntry entry = pending.getFirst();
+            File file = await(entry);
+            pending.removeFirst();
+            try {
+                zos.putNextEntry(new ZipEntry(entry.entryName));
+                InputStream is = new FileInputStream(file);
+                try {
+                    IOUtils.copy(is, zos);
+                } finally {
+                    IOUtils.closeQuietly(is);
+                }
+                zos.closeEntry();
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private File await(PendingEntry entry) throws IOException {
+        try {
+            return entry.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelToken.cancel("线程已中断");
+            throw new ExportCancelledException(cancelToken.getReason());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("生成工作簿失败:" + entry.entryName, cause);
+        }
+    }
+
+    /**
+     * 停止线程池并删除未写出的临时文件
+     */
+    private void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        if (!pending.isEmpty()) {
+            cancelToken.cancel("压缩包已关闭");
+        }
+        executor.shutdown();
+        for (PendingEntry entry : pending) {
+            try {
+                entry.future.get();
+            } catch (Exception e) {
+                //已取消或失败,临时文件已删除
+            }
+            entry.file.delete();
+        }
+        pending.clear();
+    }
+
+    /**
+     * 条目名称,重名时添加序号:name(2).xlsx
+     */
+    private String uniqueEntryName(String fileName, String suffix) {
+        String entryName = fileName + suffix;
+        for (int i = 2; !entryNames.add(entryName); i++) {
+            entryName = fileName + "(" + i + ")" + suffix;
+        }
+        return entryName;
+    }
+
+    /**
+     * 条目输出流:关闭时只刷新,不关闭压缩包
+     */
+    private static OutputStream nonClosing(OutputStream os) {
+        return new FilterOutputStream(os) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * 并行生成中的工作簿
+     */
+    private class PendingEntry implements Callable<File> {
+
+        private final String entryName;
+        private final SimpleExport.ExcelVersionEnum excelVersionEnum;
+        private final ExportJobManager.ExportTask task;
+        private final File file;
+        private Future<File> future;
+
+        PendingEntry(String entryName, SimpleExport.ExcelVersionEnum excelVersionEnum, ExportJobManager.ExportTask task) throws IOException {
+            this.entryName = entryName;
+            this.excelVersionEnum = excelVersionEnum;
+            this.task = task;
+            this.file = File.createTempFile("bundle", excelVersionEnum.getSuffix());
+        }
+
+        @Override
+        public File call() throws Exception {
+            try {
+                cancelToken.checkCancelled();
+                generate(new SimpleExport(file, excelVersionEnum), task);
+                return file;
+            } catch (Exception e) {
+                file.delete();
+                throw e;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,298 @@
+package com.demo.video.util;
+
+import org.apache.poi.util.IOUtils;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Excel导出缓存
+ * <br>以内容摘要(或调用方指定的键)为索引,将生成的Excel文件保存在本地目录中
+ * <br>目录总大小有上限,超出时按最近最少使用(LRU)淘汰,超过有效期(TTL)的文件视为失效
+ * <br>同一个缓存对象可以被多个SimpleExport共享,线程安全
+ */
+public class ExportCache {
+
+    /**
+     * 缓存文件后缀
+     */
+    private static final String CACHE_SUFFIX = ".cache";
+
+    /**
+     * 临时文件后缀
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * 缓存目录
+     */
+    private final File directory;
+
+    /**
+     * 缓存目录大小上限（字节）
+     */
+    private final long maxBytes;
+
+    /**
+     * 有效期（毫秒）:小于等于0则永不过期
+     */
+    private final long ttlMillis;
+
+    /**
+     * 缓存索引:按访问顺序排列,最早访问的在前
+     */
+    private final LinkedHashMap<String, long[]> entries = new LinkedHashMap<String, long[]>(16, 0.75f, true);
+
+    /**
+     * 当前缓存总大小（字节）
+     */
+    private long totalBytes;
+
+    /**
+     * 导出缓存构造
+     *
+     * @param directory 缓存目录,不存在则自动创建
+     * @param maxBytes  缓存目录大小上限（字节）
+     * @param ttlMillis 有效期（毫秒）,小于等于0则永不过期
+     */
+    public ExportCache(File directory, long maxBytes, long ttlMillis) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建缓存目录:" + directory);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        //恢复目录中已有的缓存
+        load();
+    }
+
+    /**
+     * 加载目录中已有的缓存文件,并清理残留的临时文件
+     */
+    private synchronized void load() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        //按修改时间排序,近似还原使用顺序
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long t1 = f1.lastModified();
+                long t2 = f2.lastModified();
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else if (name.endsWith(CACHE_SUFFIX)) {
+                String key = name.substring(0, name.length() - CACHE_SUFFIX.length());
+                entries.put(key, new long[]{file.length(), file.lastModified()});
+                totalBytes += file.length();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * 命中缓存时将文件内容写入输出流
+     *
+     * @param key 缓存键
+     * @param os  输出流
+     * @return 是否命中
+     */
+    public boolean serve(String key, OutputStream os) throws IOException {
+        InputStream is = open(key);
+        if (is == null) {
+            return false;
+        }
+        try {
+            IOUtils.copy(is, os);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+        return true;
+    }
+
+    /**
+     * 缓存是否存在（未过期）
+     *
+     * @param key 缓存键
+     */
+    public synchronized boolean contains(String key) {
+        long[] entry = entries.get(key);
+        if (entry != null && isExpired(entry)) {
+            remove(key);
+            return false;
+        }
+        return entry != null;
+    }
+
+    /**
+     * 打开缓存文件
+     * <br>在锁内打开,保证文件不会在打开前被其它线程淘汰
+     *
+     * @param key 缓存键
+     * @return 未命中返回null
+     */
+    private synchronized InputStream open(String key) {
+        if (!contains(key)) {
+            return null;
+        }
+        try {
+            return new FileInputStream(cacheFile(key));
+        } catch (FileNotFoundException e) {
+            //文件已被外部删除
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * 创建临时文件,生成的Excel先写入临时文件,再通过commit提交到缓存
+     */
+    public File createTempFile() throws IOException {
+        return File.createTempFile("export", TEMP_SUFFIX, directory);
+    }
+
+    /**
+     * 提交缓存,并将文件内容写入输出流
+     * <br>文件超过缓存上限时不缓存,输出后直接删除
+     *
+     * @param key  缓存键
+     * @param temp createTempFile创建的临时文件
+     * @param os   输出流
+     */
+    public void commit(String key, File temp, OutputStream os) throws IOException {
+        InputStream is;
+        if (temp.length() > maxBytes) {
+            is = new FileInputStream(temp);
+            try {
+                IOUtils.copy(is, os);
+            } finally {
+                IOUtils.closeQuietly(is);
+                temp.delete();
+            }
+            return;
+        }
+        synchronized (this) {
+            File target = cacheFile(key);
+            remove(key);
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("无法写入缓存文件:" + target);
+            }
+            entries.put(key, new long[]{target.length(), System.currentTimeMillis()});
+            totalBytes += target.length();
+            evict();
+            is = new FileInputStream(target);
+        }
+        try {
+            IOUtils.copy(is, os);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        for (String key : new ArrayList<String>(entries.keySet())) {
+            remove(key);
+        }
+    }
+
+    /**
+     * 淘汰过期及超出大小上限的缓存
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, long[]>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, long[]> entry = it.next();
+            if (totalBytes <= maxBytes && !isExpired(entry.getValue())) {
+                continue;
+            }
+            it.remove();
+            totalBytes -= entry.getValue()[0];
+            cacheFile(entry.getKey()).delete();
+        }
+    }
+
+    /**
+     * 移除缓存
+     *
+     * @param key 缓存键
+     */
+    private void remove(String key) {
+        long[] entry = entries.remove(key);
+        if (entry != null) {
+            totalBytes -= entry[0];
+            cacheFile(key).delete();
+        }
+    }
+
+    /**
+     * 是否过期
+     *
+     * @param entry entry[0]-文件大小 entry[1]-创建时间
+     */
+    private boolean isExpired(long[] entry) {
+        return ttlMillis > 0 && System.currentTimeMillis() - entry[1] > ttlMillis;
+    }
+
+    /**
+     * 缓存文件
+     *
+     * @param key 缓存键
+     */
+    private File cacheFile(String key) {
+        return new File(directory, key + CACHE_SUFFIX);
+    }
+
+    // ----------------------------------------工具函数----------------------------------------
+
+    /**
+     * 将调用方指定的键转换为缓存键
+     *
+     * @param key 调用方指定的键,例:报表名称+查询参数
+     */
+    public static String key(String key) {
+        MessageDigest md = newDigest();
+        try {
+            md.update(key.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return "k" + toHex(md.digest());
+    }
+
+    /**
+     * 创建摘要对象（SHA-256）
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 字节数组转十六进制字符串
+     *
+     * @param bytes
+     */
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.demo.video.util;
+
+/**
+ * 导出取消标记
+ * <br>可由其它线程取消,也可设置截止时间,超时后视为已取消
+ * <br>合并计算、流式写出时定期检查,已取消则中止导出并释放工作簿
+ */
+public class ExportCancelToken {
+
+    /**
+     * 截止时间（毫秒）:小于等于0则不限制
+     */
+    private final long deadline;
+
+    /**
+     * 上级取消标记:上级取消时本标记也视为已取消,取消本标记不影响上级
+     */
+    private final ExportCancelToken parent;
+
+    /**
+     * 取消原因:为空表示未取消
+     */
+    private volatile String reason;
+
+    /**
+     * 导出取消标记构造(不限制时间)
+     */
+    public ExportCancelToken() {
+        this.deadline = 0;
+        this.parent = null;
+    }
+
+    /**
+     * 导出取消标记构造
+     *
+     * @param timeoutMillis 超时时间（毫秒）,从构造时开始计算
+     */
+    public ExportCancelToken(long timeoutMillis) {
+        this.deadline = System.currentTimeMillis() + timeoutMillis;
+        this.parent = null;
+    }
+
+    /**
+     * 下级取消标记构造:上级取消(含超时)时随之取消,单独取消时不影响上级
+     *
+     * @param parent 上级取消标记
+     */
+    ExportCancelToken(ExportCancelToken parent) {
+        this.deadline = 0;
+        this.parent = parent;
+    }
+
+    /**
+     * 取消导出
+     */
+    public void cancel() {
+        cancel("导出已取消");
+    }
+
+    /**
+     * 取消导出
+     *
+     * @param reason 取消原因
+     */
+    public void cancel(String reason) {
+        //保留第一次取消的原因
+        if (this.reason == null) {
+            this.reason = reason;
+        }
+    }
+
+    /**
+     * 是否已取消(含超时)
+     */
+    public boolean isCancelled() {
+        if (reason == null && parent != null && parent.isCancelled()) {
+            cancel(parent.getReason());
+        }
+        if (reason == null && deadline > 0 && System.currentTimeMillis() > deadline) {
+            cancel("导出超时");
+        }
+        return reason != null;
+    }
+
+    /**
+     * 获取取消原因
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * 检查是否已取消,已取消则抛出ExportCancelledException
+     */
+    public void checkCancelled() {
+        if (isCancelled()) {
+            throw new ExportCancelledException(reason);
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.demo.video.util;
+
+/**
+ * 导出已取消
+ */
+public class ExportCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ExportCancelledException(String message) {
+        super(message);
+    }
+
+    public ExportCancelledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
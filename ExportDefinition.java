@@ -0,0 +1,433 @@
+package com.demo.video.util;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * 导出定义
+ * <br>sheet名称、行高、列宽、样式、表头行、数据列样式等与数据无关的定义,不可变、线程安全,可在启动时创建一次供所有请求共用
+ * <br>每次导出通过newRenderer创建渲染器:样式在渲染器的工作簿中按定义创建,表头行、列宽、行高自动应用
+ */
+public final class ExportDefinition {
+
+    /**
+     * 内置样式名称:与SimpleExport的默认主标题、副标题、内容样式相同,渲染时直接使用默认样式
+     */
+    public static final String MAIN_TITLE = "main";
+    public static final String DEPUTY_TITLE = "deputy";
+    public static final String CONTENT = "content";
+
+    /**
+     * 样式定义
+     * <br>不可变,修改方法返回新的样式定义;渲染时在每个工作簿中创建对应的CellStyle
+     */
+    public static final class StyleSpec {
+
+        private final String fontName;
+        private final short fontSize;
+        private final boolean bold;
+        private final short alignment;
+        private final short verticalAlignment;
+        private final boolean wrapText;
+        private final boolean border;
+        private final String dataFormat;
+
+        private StyleSpec(String fontName, short fontSize, boolean bold, short alignment, short verticalAlignment,
+                          boolean wrapText, boolean border, String dataFormat) {
+            this.fontName = fontName;
+            this.fontSize = fontSize;
+            this.bold = bold;
+            this.alignment = alignment;
+            this.verticalAlignment = verticalAlignment;
+            this.wrapText = wrapText;
+            this.border = border;
+            this.dataFormat = dataFormat;
+        }
+
+        /**
+         * 创建样式定义:左右、上下居中,不换行,无边框
+         *
+         * @param fontName 字体
+         * @param fontSize 字号
+         * @param bold     字体加粗
+         */
+        public static StyleSpec of(String fontName, int fontSize, boolean bold) {
+            return new StyleSpec(fontName, (short) fontSize, bold, CellStyle.ALIGN_CENTER, CellStyle.VERTICAL_CENTER,
+                    false, false, null);
+        }
+
+        /**
+         * 对齐方式
+         *
+         * @param alignment         左右对齐,CellStyle.ALIGN_*
+         * @param verticalAlignment 上下对齐,CellStyle.VERTICAL_*
+         */
+        public StyleSpec align(short alignment, short verticalAlignment) {
+            return new StyleSpec(fontName, fontSize, bold, alignment, verticalAlignment, wrapText, border, dataFormat);
+        }
+
+        /**
+         * 自动换行
+         */
+        public StyleSpec wrapText(boolean wrapText) {
+            return new StyleSpec(fontName, fontSize, bold, alignment, verticalAlignment, wrapText, border, dataFormat);
+        }
+
+        /**
+         * 四周细边框线
+         */
+        public StyleSpec border(boolean border) {
+            return new StyleSpec(fontName, fontSize, bold, alignment, verticalAlignment, wrapText, border, dataFormat);
+        }
+
+        /**
+         * 数据格式,如:#,##0.00
+         */
+        public StyleSpec dataFormat(String dataFormat) {
+            return new StyleSpec(fontName, fontSize, bold, alignment, verticalAlignment, wrapText, border, dataFormat);
+        }
+
+        /**
+         * 在导出对象的工作簿中创建样式
+         *
+         * @param export 导出对象
+         */
+        CellStyle create(SimpleExport export) {
+            CellStyle cellStyle = export.createStyle();
+            cellStyle.setFont(export.createFont(fontName, fontSize, bold));
+            cellStyle.setAlignment(alignment);
+            cellStyle.setVerticalAlignment(verticalAlignment);
+            cellStyle.setWrapText(wrapText);
+            if (border) {
+                export.setBorder(cellStyle, true, true, true, true);
+            }
+            if (dataFormat != null) {
+                cellStyle.setDataFormat(export.getWorkbook().createDataFormat().getFormat(dataFormat));
+            }
+            return cellStyle;
+        }
+    }
+
+    /**
+     * 表头单元格
+     */
+    public static final class HeaderCell {
+
+        private final Object value;
+        private final int colSpan;
+        private final int rowSpan;
+
+        private HeaderCell(Object value, int colSpan, int rowSpan) {
+            this.value = value;
+            this.colSpan = colSpan;
+            this.rowSpan = rowSpan;
+        }
+    }
+
+    /**
+     * 表头行
+     */
+    private static final class HeaderRow {
+
+        private final int styleIndex;
+        private final float rowHeight;
+        private final HeaderCell[] cells;
+
+        private HeaderRow(int styleIndex, float rowHeight, HeaderCell[] cells) {
+            this.styleIndex = styleIndex;
+            this.rowHeight = rowHeight;
+            this.cells = cells;
+        }
+    }
+
+    private final String sheetName;
+    private final SimpleExport.ExcelVersionEnum excelVersionEnum;
+    private final float rowHeight;
+    private final int columnWidth;
+    private final Map<Integer, Integer> columnsWidth;
+
+    /**
+     * 样式名称-序号,样式定义(按序号)
+     */
+    private final Map<String, Integer> styleIndexes;
+    private final StyleSpec[] styles;
+
+    private final HeaderRow[] headerRows;
+
+    /**
+     * 数据列的样式序号
+     */
+    private final int[] columnStyles;
+
+    private ExportDefinition(Builder builder) {
+        this.sheetName = builder.sheetName;
+        this.excelVersionEnum = builder.excelVersionEnum;
+        this.rowHeight = builder.rowHeight;
+        this.columnWidth = builder.columnWidth;
+        this.columnsWidth = Collections.unmodifiableMap(new TreeMap<Integer, Integer>(builder.columnsWidth));
+        this.styleIndexes = Collections.unmodifiableMap(new HashMap<String, Integer>(builder.styleIndexes));
+        this.styles = builder.styles.toArray(new StyleSpec[builder.styles.size()]);
+        this.headerRows = builder.headerRows.toArray(new HeaderRow[builder.headerRows.size()]);
+        this.columnStyles = new int[builder.columnStyles.size()];
+        for (int i = 0; i < columnStyles.length; i++) {
+            columnStyles[i] = builder.columnStyles.get(i);
+        }
+    }
+
+    /**
+     * 创建表头单元格
+     *
+     * @param value   单元格值
+     * @param colSpan 列合并,最小值为1
+     * @param rowSpan 行合并,最小值为1
+     */
+    public static HeaderCell cell(Object value, int colSpan, int rowSpan) {
+        return new HeaderCell(value, colSpan, rowSpan);
+    }
+
+    /**
+     * 创建导出定义
+     *
+     * @param sheetName sheet页名称
+     */
+    public static Builder builder(String sheetName) {
+        return new Builder(sheetName);
+    }
+
+    // ----------------------------------------渲染----------------------------------------
+
+    /**
+     * 创建渲染器,输出到响应
+     *
+     * @param response 响应对象
+     * @param fileName 文件名
+     */
+    public ExportRenderer newRenderer(HttpServletResponse response, String fileName) throws IOException {
+        return new ExportRenderer(this, new SimpleExport(response, fileName, excelVersionEnum, sheetName));
+    }
+
+    /**
+     * 创建渲染器,输出到文件
+     *
+     * @param file 文件
+     */
+    public ExportRenderer newRenderer(File file) throws FileNotFoundException {
+        return new ExportRenderer(this, new SimpleExport(file, excelVersionEnum, sheetName));
+    }
+
+    /**
+     * 创建渲染器,输出到输出流
+     *
+     * @param os 输出流
+     */
+    public ExportRenderer newRenderer(OutputStream os) {
+        return new ExportRenderer(this, new SimpleExport(os, excelVersionEnum, sheetName));
+    }
+
+    /**
+     * 在导出对象中应用定义:行高、列宽、表头行
+     *
+     * @param export      导出对象
+     * @param cellStyles  按序号创建的样式
+     */
+    void apply(SimpleExport export, CellStyle[] cellStyles) {
+        export.setRowHeight(rowHeight);
+        export.setAllColumnWidth(columnWidth);
+        for (Map.Entry<Integer, Integer> entry : columnsWidth.entrySet()) {
+            export.setColumnWidth(entry.getKey(), entry.getValue());
+        }
+        for (HeaderRow headerRow : headerRows) {
+            CellStyle cellStyle = cellStyles[headerRow.styleIndex];
+            Object[][] columns = new Object[headerRow.cells.length][];
+            for (int j = 0; j < columns.length; j++) {
+                HeaderCell cell = headerRow.cells[j];
+                columns[j] = export.set(cell.value, cell.colSpan, cell.rowSpan, cellStyle);
+            }
+            export.createRow(cellStyle, headerRow.rowHeight > 0 ? headerRow.rowHeight : rowHeight, columns);
+        }
+    }
+
+    /**
+     * 按序号在导出对象的工作簿中创建样式,内置样式使用导出对象的默认样式
+     *
+     * @param export 导出对象
+     */
+    CellStyle[] createStyles(SimpleExport export) {
+        CellStyle[] cellStyles = new CellStyle[styles.length];
+        for (int i = 0; i < styles.length; i++) {
+            if (i == 0) {
+                cellStyles[i] = export.getMainTitleStyle();
+            } else if (i == 1) {
+                cellStyles[i] = export.getDeputyTitleStyle();
+            } else if (i == 2) {
+                cellStyles[i] = export.getContentStyle();
+            } else {
+                cellStyles[i] = styles[i].create(export);
+            }
+        }
+        return cellStyles;
+    }
+
+    /**
+     * 样式序号
+     *
+     * @param styleName 样式名称
+     * @return 序号,不存在返回-1
+     */
+    int getStyleIndex(String styleName) {
+        Integer index = styleIndexes.get(styleName);
+        return index != null ? index : -1;
+    }
+
+    int[] getColumnStyles() {
+        return columnStyles;
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    public SimpleExport.ExcelVersionEnum getExcelVersionEnum() {
+        return excelVersionEnum;
+    }
+
+    public float getRowHeight() {
+        return rowHeight;
+    }
+
+    public int getColumnCount() {
+        return columnStyles.length;
+    }
+
+    /**
+     * 导出定义构造器
+     * <br>非线程安全,build后生成的定义不受后续修改影响
+     */
+    public static final class Builder {
+
+        private final String sheetName;
+        private SimpleExport.ExcelVersionEnum excelVersionEnum = SimpleExport.ExcelVersionEnum.EXCEL2007;
+        private float rowHeight = 35;
+        private int columnWidth = 3000;
+        private final Map<Integer, Integer> columnsWidth = new HashMap<Integer, Integer>();
+        private final Map<String, Integer> styleIndexes = new HashMap<String, Integer>();
+        private final List<StyleSpec> styles = new ArrayList<StyleSpec>();
+        private final List<HeaderRow> headerRows = new ArrayList<HeaderRow>();
+        private final List<Integer> columnStyles = new ArrayList<Integer>();
+
+        private Builder(String sheetName) {
+            this.sheetName = sheetName;
+            //内置样式:序号0-2,与SimpleExport默认样式对应
+            style(MAIN_TITLE, StyleSpec.of("黑体", 26, true).wrapText(true));
+            style(DEPUTY_TITLE, StyleSpec.of("仿宋_GB2312", 12, true).wrapText(true).border(true));
+            style(CONTENT, StyleSpec.of("仿宋_GB2312", 12, false).wrapText(true).border(true));
+        }
+
+        /**
+         * Excel版本（默认Excel2007）
+         */
+        public Builder excelVersion(SimpleExport.ExcelVersionEnum excelVersionEnum) {
+            this.excelVersionEnum = excelVersionEnum;
+            return this;
+        }
+
+        /**
+         * 默认行高
+         */
+        public Builder rowHeight(float rowHeight) {
+            this.rowHeight = rowHeight;
+            return this;
+        }
+
+        /**
+         * 所有列的默认宽度
+         */
+        public Builder columnWidth(int columnWidth) {
+            this.columnWidth = columnWidth;
+            return this;
+        }
+
+        /**
+         * 指定列的宽度
+         */
+        public Builder columnWidth(int columnIndex, int width) {
+            columnsWidth.put(columnIndex, width);
+            return this;
+        }
+
+        /**
+         * 定义样式,内置样式main、deputy、content不能重新定义
+         *
+         * @param styleName 样式名称
+         * @param styleSpec 样式定义
+         */
+        public Builder style(String styleName, StyleSpec styleSpec) {
+            if (styleIndexes.containsKey(styleName)) {
+                throw new IllegalStateException("样式已定义:" + styleName);
+            }
+            styleIndexes.put(styleName, styles.size());
+            styles.add(styleSpec);
+            return this;
+        }
+
+        /**
+         * 添加表头行:每个单元格不合并
+         *
+         * @param styleName 样式名称
+         * @param values    单元格值
+         */
+        public Builder headerRow(String styleName, String... values) {
+            HeaderCell[] cells = new HeaderCell[values.length];
+            for (int i = 0; i < values.length; i++) {
+                cells[i] = cell(values[i], 1, 1);
+            }
+            return headerRow(styleName, 0, cells);
+        }
+
+        /**
+         * 添加表头行
+         *
+         * @param styleName 样式名称
+         * @param rowHeight 行高,小于等于0则使用默认行高
+         * @param cells     单元格,通过ExportDefinition.cell创建
+         */
+        public Builder headerRow(String styleName, float rowHeight, HeaderCell... cells) {
+            headerRows.add(new HeaderRow(styleIndex(styleName), rowHeight, cells.clone()));
+            return this;
+        }
+
+        /**
+         * 按顺序定义数据列的样式
+         *
+         * @param styleNames 样式名称
+         */
+        public Builder columns(String... styleNames) {
+            for (String styleName : styleNames) {
+                columnStyles.add(styleIndex(styleName));
+            }
+            return this;
+        }
+
+        private int styleIndex(String styleName) {
+            Integer index = styleIndexes.get(styleName);
+            if (index == null) {
+                throw new IllegalStateException("样式未定义:" + styleName);
+            }
+            return index;
+        }
+
+        /**
+         * 生成导出定义
+         */
+        public ExportDefinition build() {
+            return new ExportDefinition(this);
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.demo.video.util;
+
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * 导出公式
+ * <br>作为单元格值传入set,合并计算时写入为公式;公式中可以使用A1引用,也可以使用R1C1引用,
+ * R1C1引用在写入时按单元格的实际位置换算为A1引用:R[-1]C为上一行同列,RC[-2]为同行左侧第二列,R1C1为绝对引用$A$1
+ * (同一公式中混用时,A1引用不能使用R开头、第二个字母为C的列名,如RC1)
+ * <br>可以指定计算结果作为缓存值写入;未指定时可在生成前统一计算(SimpleExport.setEvaluateFormulas),
+ * 否则打开文件时由Excel重新计算
+ */
+public class ExportFormula {
+
+    /**
+     * 公式文本(不含=)
+     */
+    private final String formula;
+
+    /**
+     * 计算结果,为null则没有缓存值
+     */
+    private final Object cachedValue;
+
+    /**
+     * 是否包含R1C1引用
+     */
+    private final boolean relative;
+
+    private ExportFormula(String formula, Object cachedValue) {
+        this.formula = formula.startsWith("=") ? formula.substring(1) : formula;
+        this.cachedValue = cachedValue;
+        this.relative = resolve(this.formula, 0, 0, false) != null;
+    }
+
+    /**
+     * 创建公式
+     *
+     * @param formula 公式,如:SUM(R[-3]C:R[-1]C)、=A1*2
+     */
+    public static ExportFormula of(String formula) {
+        return new ExportFormula(formula, null);
+    }
+
+    /**
+     * 创建公式并指定计算结果
+     *
+     * @param formula     公式
+     * @param cachedValue 计算结果,作为缓存值写入,打开文件时直接显示
+     */
+    public static ExportFormula of(String formula, Object cachedValue) {
+        return new ExportFormula(formula, cachedValue);
+    }
+
+    /**
+     * 换算为单元格所在位置的A1公式
+     *
+     * @param row    单元格所在行
+     * @param column 单元格所在列
+     */
+    String toFormula(int row, int column) {
+        return relative ? resolve(formula, row, column, true) : formula;
+    }
+
+    Object getCachedValue() {
+        return cachedValue;
+    }
+
+    public String getFormula() {
+        return formula;
+    }
+
+    @Override
+    public String toString() {
+        return "formula:" + formula;
+    }
+
+    /**
+     * 将R1C1引用换算为A1引用,跳过字符串和带引号的sheet名称
+     *
+     * @param formula 公式
+     * @param row     单元格所在行
+     * @param column  单元格所在列
+     * @param build   是否生成换算后的公式
+     * @return 换算后的公式;不生成时有R1C1引用返回原公式,没有返回null
+     */
+    private static String resolve(String formula, int row, int column, boolean build) {
+        StringBuilder sb = build ? new StringBuilder(formula.length() + 8) : null;
+        boolean found = false;
+        int length = formula.length();
+        int i = 0;
+        while (i < length) {
+            char c = formula.charAt(i);
+            //字符串、带引号的sheet名称原样保留
+            if (c == '"' || c == '\'') {
+                int end = i + 1;
+                while (end < length) {
+                    if (formula.charAt(end) == c) {
+                        if (end + 1 < length && formula.charAt(end + 1) == c) {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, length);
+                if (build) {
+                    sb.append(formula, i, end);
+                }
+                i = end;
+                continue;
+            }
+            int[] ref = (c == 'R' || c == 'r') && !isNamePart(formula, i - 1) ? parseReference(formula, i) : null;
+            if (ref == null) {
+                if (build) {
+                    sb.append(c);
+                }
+                i++;
+                continue;
+            }
+            found = true;
+            if (build) {
+                //ref:结束位置,行值,行是否相对,列值,列是否相对
+                int refRow = ref[2] == 1 ? row + ref[1] : ref[1] - 1;
+                int refCol = ref[4] == 1 ? column + ref[3] : ref[3] - 1;
+                if (refRow < 0 || refCol < 0) {
+                    throw new IllegalStateException("公式引用超出表格范围:" + formula.substring(i, ref[0]));
+                }
+                if (ref[4] == 0) {
+                    sb.append('$');
+                }
+                sb.append(CellReference.convertNumToColString(refCol));
+                if (ref[2] == 0) {
+                    sb.append('$');
+                }
+                sb.append(refRow + 1);
+            }
+            i = ref[0];
+        }
+        if (!found) {
+            return null;
+        }
+        return build ? sb.toString() : formula;
+    }
+
+    /**
+     * 解析R1C1引用:R[n]、Rn或R,之后C[n]、Cn或C,且后面不是名称字符或左括号
+     *
+     * @return {结束位置,行值,行是否相对,列值,列是否相对},不是R1C1引用返回null
+     */
+    private static int[] parseReference(String formula, int start) {
+        int[] ref = new int[5];
+        int i = parsePart(formula, start + 1, ref, 1);
+        if (i < 0 || i >= formula.length() || (formula.charAt(i) != 'C' && formula.charAt(i) != 'c')) {
+            return null;
+        }
+        i = parsePart(formula, i + 1, ref, 3);
+        if (i < 0 || isNamePart(formula, i) || (i < formula.length() && "(!".indexOf(formula.charAt(i)) >= 0)) {
+            return null;
+        }
+        ref[0] = i;
+        return ref;
+    }
+
+    /**
+     * 解析引用的行或列部分:[n]为相对偏移,n为绝对位置(从1开始),空为相对偏移0
+     *
+     * @return 结束位置,格式错误返回-1
+     */
+    private static int parsePart(String formula, int i, int[] ref, int offset) {
+        int length = formula.length();
+        if (i < length && formula.charAt(i) == '[') {
+            int end = formula.indexOf(']', i);
+            if (end < 0) {
+                return -1;
+            }
+            try {
+                ref[offset] = Integer.parseInt(formula.substring(i + 1, end).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            ref[offset + 1] = 1;
+            return end + 1;
+        }
+        int end = i;
+        while (end < length && Character.isDigit(formula.charAt(end))) {
+            end++;
+        }
+        if (end == i) {
+            ref[offset] = 0;
+            ref[offset + 1] = 1;
+        } else {
+            ref[offset] = Integer.parseInt(formula.substring(i, end));
+            ref[offset + 1] = 0;
+            if (ref[offset] == 0) {
+                return -1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * 指定位置是否为名称(函数名、sheet名、已定义名称)的一部分
+     */
+    private static boolean isNamePart(String formula, int i) {
+        if (i < 0 || i >= formula.length()) {
+            return false;
+        }
+        char c = formula.charAt(i);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$';
+    }
+
+}
@@ -0,0 +1,283 @@
+package com.demo.video.util;
+
+import java.io.File;
+
+/**
+ * 导出任务
+ * <br>由ExportJobManager创建,用于轮询任务状态、进度,完成后获取导出文件
+ */
+public class ExportJob {
+
+    /**
+     * 任务状态
+     */
+    public enum StatusEnum {
+        /**
+         * 排队中
+         */
+        QUEUED,
+        /**
+         * 创建行数据
+         */
+        PREPARING,
+        /**
+         * 等待内存
+         */
+        WAITING,
+        /**
+         * 生成Excel
+         */
+        GENERATING,
+        /**
+         * 已完成
+         */
+        DONE,
+        /**
+         * 失败
+         */
+        FAILED,
+        /**
+         * 已取消
+         */
+        CANCELLED;
+
+        /**
+         * 是否已结束
+         */
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    /**
+     * 任务ID
+     */
+    private final String id;
+
+    /**
+     * 下载文件名（不含后缀）
+     */
+    private final String fileName;
+
+    /**
+     * Excel版本
+     */
+    private final SimpleExport.ExcelVersionEnum excelVersionEnum;
+
+    /**
+     * 优先级:值越大越先执行
+     */
+    private final int priority;
+
+    /**
+     * 导出文件
+     */
+    private final File file;
+
+    /**
+     * 取消令牌
+     */
+    private final ExportCancelToken cancelToken = new ExportCancelToken();
+
+    /**
+     * 任务状态
+     */
+    private volatile StatusEnum status = StatusEnum.QUEUED;
+
+    /**
+     * 行数(创建行数据完成后)
+     */
+    private volatile int rowCount;
+
+    /**
+     * 预估内存（字节）
+     */
+    private volatile long estimatedMemory;
+
+    /**
+     * 生成阶段的进度:阶段、已完成数、总数、速度、预计剩余时间
+     */
+    private volatile ExportProgressListener.PhaseEnum phase;
+    private volatile long done;
+    private volatile long total = -1;
+    private volatile double throughput;
+    private volatile long etaMillis = -1;
+
+    /**
+     * 失败原因
+     */
+    private volatile Throwable error;
+
+    /**
+     * 提交时间、开始时间、结束时间（毫秒）
+     */
+    private final long submitTime = System.currentTimeMillis();
+    private volatile long startTime;
+    private volatile long finishTime;
+
+    /**
+     * 导出任务构造
+     *
+     * @param id               任务ID
+     * @param fileName         下载文件名（不含后缀）
+     * @param excelVersionEnum Excel版本
+     * @param priority         优先级
+     * @param file             导出文件
+     */
+    ExportJob(String id, String fileName, SimpleExport.ExcelVersionEnum excelVersionEnum, int priority, File file) {
+        this.id = id;
+        this.fileName = fileName;
+        this.excelVersionEnum = excelVersionEnum;
+        this.priority = priority;
+        this.file = file;
+    }
+
+    /**
+     * 取消任务
+     * <br>排队中的任务直接取消,执行中的任务在下一次检查时停止
+     */
+    public void cancel() {
+        cancelToken.cancel("任务已取消");
+    }
+
+    /**
+     * 进度（0-100）
+     * <br>按阶段估算:创建行数据完成30,获得内存40,合并计算按行数推进到90,写出完成100
+     */
+    public int getProgress() {
+        switch (status) {
+            case WAITING:
+                return 30;
+            case GENERATING:
+                if (phase == ExportProgressListener.PhaseEnum.WRITE) {
+                    return 90;
+                }
+                long t = total;
+                return t > 0 ? 40 + (int) (50 * Math.min(done, t) / t) : 40;
+            case DONE:
+                return 100;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 导出文件,任务完成前返回null
+     */
+    public File getFile() {
+        return status == StatusEnum.DONE ? file : null;
+    }
+
+    /**
+     * 下载文件名（含后缀）
+     */
+    public String getDownloadName() {
+        return fileName + excelVersionEnum.getSuffix();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public SimpleExport.ExcelVersionEnum getExcelVersionEnum() {
+        return excelVersionEnum;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public StatusEnum getStatus() {
+        return status;
+    }
+
+    void setStatus(StatusEnum status) {
+        if (status == StatusEnum.PREPARING) {
+            startTime = System.currentTimeMillis();
+        } else if (status.isFinished()) {
+            finishTime = System.currentTimeMillis();
+        }
+        this.status = status;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    void setRowCount(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public long getEstimatedMemory() {
+        return estimatedMemory;
+    }
+
+    void setEstimatedMemory(long estimatedMemory) {
+        this.estimatedMemory = estimatedMemory;
+    }
+
+    /**
+     * 更新生成阶段的进度
+     */
+    void setProgress(ExportProgressListener.PhaseEnum phase, long done, long total, double throughput, long etaMillis) {
+        this.done = done;
+        this.total = total;
+        this.throughput = throughput;
+        this.etaMillis = etaMillis;
+        this.phase = phase;
+    }
+
+    /**
+     * 当前生成阶段,未开始生成时为null
+     */
+    public ExportProgressListener.PhaseEnum getPhase() {
+        return phase;
+    }
+
+    /**
+     * 当前阶段每秒完成的行数(合并计算)或字节数(写出)
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * 当前阶段预计剩余时间（毫秒）,未知时为-1
+     */
+    public long getEtaMillis() {
+        return etaMillis;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    void setError(Throwable error) {
+        this.error = error;
+    }
+
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    ExportCancelToken getCancelToken() {
+        return cancelToken;
+    }
+
+    File getOutputFile() {
+        return file;
+    }
+
+}
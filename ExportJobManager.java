@@ -0,0 +1,382 @@
+package com.demo.video.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 导出任务管理
+ * <br>任务提交后立即返回,由固定数量的工作线程按优先级执行,结果写入输出目录供稍后下载
+ * <br>任务创建行数据前先申请一份基础内存,创建完行数据后按表格大小预估内存并补足,申请不到时等待其它任务释放,
+ * 以此限制同时创建行数据及生成的导出占用的堆内存
+ * <br>预估超出总预算的Excel2007任务切换为流式导出,仍超出的任务独占全部预算执行
+ * <br>结束的任务保留一段时间供下载,超时后移除并删除导出文件
+ */
+public class ExportJobManager {
+
+    /**
+     * 内存预算的计量单位（字节）
+     */
+    private static final int PERMIT_BYTES = 1024;
+
+    /**
+     * 等待内存时检查取消的间隔（毫秒）
+     */
+    private static final long WAIT_INTERVAL = 500;
+
+    /**
+     * 合并计算时更新任务进度的间隔行数
+     */
+    private static final int PROGRESS_INTERVAL = 5000;
+
+    /**
+     * 创建行数据前申请的基础内存（字节）
+     */
+    private static final long PREPARE_BYTES = 1024 * 1024;
+
+    /**
+     * 导出内容
+     */
+    public interface ExportTask {
+
+        /**
+         * 在工作线程中创建sheet和行数据,不需要调用excelGenerate
+         *
+         * @param export 导出对象,输出到任务文件
+         */
+        void prepare(SimpleExport export) throws Exception;
+    }
+
+    /**
+     * 工作线程池,任务按优先级排队
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 内存预算
+     */
+    private final Semaphore memory;
+
+    /**
+     * 内存预算（单位:PERMIT_BYTES）
+     */
+    private final int memoryPermits;
+
+    /**
+     * 输出目录
+     */
+    private final File outputDir;
+
+    /**
+     * 任务:任务ID-任务
+     */
+    private final ConcurrentHashMap<String, ExportJob> jobs = new ConcurrentHashMap<String, ExportJob>();
+
+    /**
+     * 任务序号:同优先级按提交顺序执行
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 数据容器内存中保留的最大行数,小于等于0则不写入临时文件
+     */
+    private volatile int spillThreshold = 0;
+
+    /**
+     * 结束的任务保留时间（毫秒）,小于等于0则一直保留
+     */
+    private volatile long retentionMillis = 60 * 60 * 1000L;
+
+    /**
+     * 正在生成的任务数
+     */
+    private final AtomicInteger generating = new AtomicInteger();
+
+    /**
+     * 导出任务管理构造
+     *
+     * @param threads      工作线程数
+     * @param memoryBudget 同时生成的导出可占用的内存（字节）
+     * @param outputDir    输出目录,不存在则自动创建
+     */
+    public ExportJobManager(int threads, long memoryBudget, File outputDir) throws IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("无法创建输出目录:" + outputDir);
+        }
+        this.outputDir = outputDir;
+        this.memoryPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / PERMIT_BYTES));
+        this.memory = new Semaphore(memoryPermits, true);
+        //PriorityBlockingQueue按JobRunner排序,必须通过execute提交
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), SimpleExport.newThreadFactory("export-job"));
+    }
+
+    /**
+     * 设置数据容器内存中保留的最大行数
+     * <br>等待内存期间行数据写入临时文件,不占用堆内存
+     *
+     * @param spillThreshold 小于等于0则不写入临时文件（默认）
+     */
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * 设置结束的任务保留时间
+     * <br>超时的任务在提交任务或获取任务列表时移除,并删除导出文件
+     *
+     * @param retentionMillis 保留时间（毫秒）,小于等于0则一直保留,需调用remove移除（默认1小时）
+     */
+    public void setRetention(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param fileName         下载文件名（不含后缀）
+     * @param excelVersionEnum Excel版本
+     * @param priority         优先级:值越大越先执行
+     * @param task             导出内容
+     */
+    public ExportJob submit(String fileName, SimpleExport.ExcelVersionEnum excelVersionEnum, int priority, ExportTask task) {
+        evictExpired();
+        long seq = sequence.incrementAndGet();
+        String id = Long.toString(seq, 36) + Long.toString(System.currentTimeMillis(), 36);
+        ExportJob job = new ExportJob(id, fileName, excelVersionEnum, priority,
+                new File(outputDir, id + excelVersionEnum.getSuffix()));
+        jobs.put(id, job);
+        executor.execute(new JobRunner(job, task, seq));
+        return job;
+    }
+
+    /**
+     * 提交任务（默认优先级0）
+     *
+     * @param fileName         下载文件名（不含后缀）
+     * @param excelVersionEnum Excel版本
+     * @param task             导出内容
+     */
+    public ExportJob submit(String fileName, SimpleExport.ExcelVersionEnum excelVersionEnum, ExportTask task) {
+        return submit(fileName, excelVersionEnum, 0, task);
+    }
+
+    /**
+     * 获取任务
+     *
+     * @param id 任务ID
+     * @return 不存在返回null
+     */
+    public ExportJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * 所有任务
+     */
+    public List<ExportJob> getJobs() {
+        evictExpired();
+        return new ArrayList<ExportJob>(jobs.values());
+    }
+
+    /**
+     * 移除任务:未结束的任务先取消,已完成的任务删除导出文件
+     *
+     * @param id 任务ID
+     */
+    public void remove(String id) {
+        ExportJob job = jobs.remove(id);
+        if (job == null) {
+            return;
+        }
+        job.cancel();
+        if (job.getStatus().isFinished()) {
+            job.getOutputFile().delete();
+        }
+    }
+
+    /**
+     * 移除超过保留时间的结束任务
+     */
+    private void evictExpired() {
+        long retention = retentionMillis;
+        if (retention <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (ExportJob job : jobs.values()) {
+            if (job.getStatus().isFinished() && now - job.getFinishTime() > retention) {
+                remove(job.getId());
+            }
+        }
+    }
+
+    /**
+     * 排队中的任务数
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 已占用的内存预算（字节）
+     */
+    public long getUsedMemory() {
+        return (long) (memoryPermits - memory.availablePermits()) * PERMIT_BYTES;
+    }
+
+    /**
+     * 关闭:取消所有未结束的任务
+     */
+    public void shutdown() {
+        for (ExportJob job : jobs.values()) {
+            if (!job.getStatus().isFinished()) {
+                job.cancel();
+            }
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * 等待所有任务结束
+     *
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * 执行任务
+     *
+     * @param job  任务
+     * @param task 导出内容
+     */
+    private void run(final ExportJob job, ExportTask task) {
+        ExportCancelToken cancelToken = job.getCancelToken();
+        if (cancelToken.isCancelled()) {
+            job.setStatus(ExportJob.StatusEnum.CANCELLED);
+            return;
+        }
+        job.setStatus(ExportJob.StatusEnum.PREPARING);
+        File file = job.getOutputFile();
+        SimpleExport export = null;
+        //已持有的内存预算
+        int[] held = {0};
+        try {
+            //创建行数据前申请基础内存,限制同时创建行数据的任务
+            acquireMemory(cancelToken, held, (int) Math.max(1, Math.min(memoryPermits, PREPARE_BYTES / PERMIT_BYTES)));
+            export = new SimpleExport(file, job.getExcelVersionEnum());
+            export.setCancelToken(cancelToken);
+            export.setSpillThreshold(spillThreshold);
+            export.setProgressListener(new ExportProgressListener() {
+                @Override
+                public void onProgress(PhaseEnum phase, long done, long total, double throughput, long etaMillis) {
+                    job.setProgress(phase, done, total, throughput, etaMillis);
+                }
+            }, PROGRESS_INTERVAL);
+            task.prepare(export);
+            job.setRowCount(export.getRowCount());
+
+            //补足内存:超出总预算时先尝试流式导出
+            long estimate = export.estimateMemory();
+            if (estimate > (long) memoryPermits * PERMIT_BYTES && !job.getExcelVersionEnum().isExcel2003()) {
+                export.useStreaming();
+                estimate = export.estimateMemory();
+            }
+            job.setEstimatedMemory(estimate);
+            int permits = (int) Math.max(1, Math.min(memoryPermits, estimate / PERMIT_BYTES));
+            job.setStatus(ExportJob.StatusEnum.WAITING);
+            acquireMemory(cancelToken, held, permits);
+            generating.incrementAndGet();
+            try {
+                job.setStatus(ExportJob.StatusEnum.GENERATING);
+                export.excelGenerate();
+            } finally {
+                generating.decrementAndGet();
+            }
+            export.close();
+            job.setStatus(ExportJob.StatusEnum.DONE);
+            //执行期间已被移除
+            if (!jobs.containsKey(job.getId())) {
+                file.delete();
+            }
+        } catch (Throwable e) {
+            if (export != null) {
+                export.close();
+            }
+            file.delete();
+            job.setError(e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            boolean isCancelled = cancelToken.isCancelled() || e instanceof InterruptedException;
+            job.setStatus(isCancelled ? ExportJob.StatusEnum.CANCELLED : ExportJob.StatusEnum.FAILED);
+        } finally {
+            if (held[0] > 0) {
+                memory.release(held[0]);
+            }
+        }
+    }
+
+    /**
+     * 申请内存,补足到指定数量
+     * <br>没有正在生成的任务时,等待中的任务可能互相持有基础内存而永远等待,此时释放已持有的内存后重新申请
+     *
+     * @param cancelToken 取消标记
+     * @param held        已持有的数量,申请后更新;出错时由调用方释放
+     * @param permits     需要的数量
+     */
+    private void acquireMemory(ExportCancelToken cancelToken, int[] held, int permits) throws InterruptedException {
+        if (held[0] > permits) {
+            memory.release(held[0] - permits);
+            held[0] = permits;
+        }
+        while (held[0] < permits) {
+            if (memory.tryAcquire(permits - held[0], WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                held[0] = permits;
+                return;
+            }
+            if (held[0] > 0 && generating.get() == 0) {
+                memory.release(held[0]);
+                held[0] = 0;
+            }
+            cancelToken.checkCancelled();
+        }
+    }
+
+    /**
+     * 排队的任务:按优先级从高到低,同优先级按提交顺序
+     */
+    private class JobRunner implements Runnable, Comparable<JobRunner> {
+
+        private final ExportJob job;
+        private final ExportTask task;
+        private final long seq;
+
+        JobRunner(ExportJob job, ExportTask task, long seq) {
+            this.job = job;
+            this.task = task;
+            this.seq = seq;
+        }
+
+        @Override
+        public void run() {
+            ExportJobManager.this.run(job, task);
+        }
+
+        @Override
+        public int compareTo(JobRunner o) {
+            if (job.getPriority() != o.job.getPriority()) {
+                return job.getPriority() > o.job.getPriority() ? -1 : 1;
+            }
+            return seq < o.seq ? -1 : (seq == o.seq ? 0 : 1);
+        }
+    }
+
+}
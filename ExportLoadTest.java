@@ -0,0 +1,408 @@
+package com.demo.video.util;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并发导出压测
+ * <br>在进程内模拟多个用户同时通过响应对象下载:每个请求使用代理生成的响应对象,输出流只统计字节数不保存;
+ * 导出内容包含合并表头、下拉选项、合并单元格和大量数据行
+ * <br>按导出方式分别统计延迟分位数、吞吐量、堆内存峰值和GC次数及耗时,用于容量评估和本地回归对比
+ * <br>用法:java com.demo.video.util.ExportLoadTest [users=50] [requests=4] [rows=1000] [duration=0] [engines=xls,xlsx,streaming] [warmup=1]
+ * <pre>
+ * users     并发用户数
+ * requests  每个用户的请求数
+ * rows      每个导出的数据行数
+ * duration  持续时间(秒),大于0时为持续压测:每个用户循环请求直到时间结束,忽略requests
+ * engines   导出方式:xls(HSSF)、xlsx(XSSF)、streaming(SXSSF)
+ * warmup    每种导出方式正式统计前每个用户的预热请求数
+ * </pre>
+ */
+public class ExportLoadTest {
+
+    /**
+     * 导出方式
+     */
+    enum LoadEngineEnum {
+        XLS(SimpleExport.ExcelVersionEnum.EXCEL2003, false, "HSSF"),
+        XLSX(SimpleExport.ExcelVersionEnum.EXCEL2007, false, "XSSF"),
+        STREAMING(SimpleExport.ExcelVersionEnum.EXCEL2007, true, "SXSSF");
+
+        private final SimpleExport.ExcelVersionEnum excelVersionEnum;
+        private final boolean streaming;
+        private final String engine;
+
+        LoadEngineEnum(SimpleExport.ExcelVersionEnum excelVersionEnum, boolean streaming, String engine) {
+            this.excelVersionEnum = excelVersionEnum;
+            this.streaming = streaming;
+            this.engine = engine;
+        }
+    }
+
+    private static final String[] STORES = {"北京一店", "北京二店", "上海一店", "广州一店", "深圳一店", "成都一店"};
+
+    private static final String[][] STATUS_OPTIONS = {{"待审核"}, {"待审核", "已审核", "已驳回"}};
+
+    private int users = 50;
+
+    private int requests = 4;
+
+    private int rows = 1000;
+
+    private int duration = 0;
+
+    private int warmup = 1;
+
+    private final List<LoadEngineEnum> engines = new ArrayList<LoadEngineEnum>();
+
+    public static void main(String[] args) throws Exception {
+        ExportLoadTest test = new ExportLoadTest();
+        test.parseArgs(args);
+        test.run();
+    }
+
+    /**
+     * 解析参数:name=value
+     */
+    void parseArgs(String[] args) {
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index < 0) {
+                throw new IllegalStateException("参数格式错误,应为name=value:" + arg);
+            }
+            String name = arg.substring(0, index).trim();
+            String value = arg.substring(index + 1).trim();
+            if ("users".equals(name)) {
+                users = Integer.parseInt(value);
+            } else if ("requests".equals(name)) {
+                requests = Integer.parseInt(value);
+            } else if ("rows".equals(name)) {
+                rows = Integer.parseInt(value);
+            } else if ("duration".equals(name)) {
+                duration = Integer.parseInt(value);
+            } else if ("warmup".equals(name)) {
+                warmup = Integer.parseInt(value);
+            } else if ("engines".equals(name)) {
+                engines.clear();
+                for (String engine : value.split(",")) {
+                    engines.add(LoadEngineEnum.valueOf(engine.trim().toUpperCase()));
+                }
+            } else {
+                throw new IllegalStateException("未知参数:" + name);
+            }
+        }
+        if (engines.isEmpty()) {
+            engines.addAll(Arrays.asList(LoadEngineEnum.values()));
+        }
+        if (users < 1 || rows < 1 || (duration <= 0 && requests < 1)) {
+            throw new IllegalStateException("users、rows、requests须大于0");
+        }
+    }
+
+    /**
+     * 依次压测各导出方式并输出结果
+     */
+    void run() throws Exception {
+        System.out.println("并发用户:" + users + ",数据行:" + rows
+                + (duration > 0 ? ",持续:" + duration + "s" : ",每用户请求:" + requests)
+                + ",最大堆:" + (Runtime.getRuntime().maxMemory() >> 20) + "MB");
+        System.out.println(String.format("%-10s%-6s%-6s%6s%5s%9s%9s%9s%9s%9s%9s%8s%7s%6s%8s",
+                "方式", "引擎", "格式", "请求", "失败", "p50ms", "p90ms", "p99ms", "maxms",
+                "req/s", "MB/s", "平均KB", "堆峰值MB", "GC次数", "GC耗时ms"));
+        for (LoadEngineEnum engine : engines) {
+            if (warmup > 0) {
+                execute(engine, warmup, 0);
+            }
+            LoadResult result = measure(engine);
+            System.out.println(result.format());
+            for (String line : result.collectors) {
+                System.out.println("    " + line);
+            }
+            if (result.firstError != null) {
+                System.out.println("    首个错误:" + result.firstError);
+            }
+        }
+    }
+
+    /**
+     * 压测一种导出方式:统计前清理堆并重置内存池峰值,记录GC计数
+     */
+    private LoadResult measure(LoadEngineEnum engine) throws Exception {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        long[] gcCounts = new long[collectors.size()];
+        long[] gcTimes = new long[collectors.size()];
+        for (int i = 0; i < collectors.size(); i++) {
+            gcCounts[i] = collectors.get(i).getCollectionCount();
+            gcTimes[i] = collectors.get(i).getCollectionTime();
+        }
+
+        long start = System.nanoTime();
+        LoadResult result = execute(engine, requests, duration);
+        result.elapsed = System.nanoTime() - start;
+
+        //各内存池峰值之和:各池峰值不一定同时出现,为上限估计
+        for (MemoryPoolMXBean pool : heapPools) {
+            result.peakHeap += pool.getPeakUsage().getUsed();
+        }
+        for (int i = 0; i < collectors.size(); i++) {
+            GarbageCollectorMXBean collector = collectors.get(i);
+            long count = collector.getCollectionCount() - gcCounts[i];
+            long time = collector.getCollectionTime() - gcTimes[i];
+            result.gcCount += count;
+            result.gcTime += time;
+            result.collectors.add(collector.getName() + ":次数" + count + ",耗时" + time + "ms"
+                    + (count > 0 ? ",平均" + String.format("%.1f", (double) time / count) + "ms" : ""));
+        }
+        return result;
+    }
+
+    /**
+     * 并发执行导出:所有用户线程就绪后同时开始
+     *
+     * @param engine   导出方式
+     * @param requests 每个用户的请求数
+     * @param duration 持续时间(秒),大于0时忽略请求数
+     */
+    private LoadResult execute(final LoadEngineEnum engine, final int requests, final int duration) throws Exception {
+        final LoadResult result = new LoadResult(engine);
+        final CountDownLatch ready = new CountDownLatch(users);
+        final CountDownLatch go = new CountDownLatch(1);
+        final long deadline = duration > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(duration) : 0;
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        List<Future<long[]>> futures = new ArrayList<Future<long[]>>();
+        try {
+            for (int u = 0; u < users; u++) {
+                final int user = u;
+                futures.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws Exception {
+                        long[] latencies = new long[Math.max(requests, 16)];
+                        int count = 0;
+                        ready.countDown();
+                        go.await();
+                        for (int i = 0; deadline > 0 ? System.nanoTime() < deadline : i < requests; i++) {
+                            long start = System.nanoTime();
+                            try {
+                                result.bytes.addAndGet(download(engine, user * 100003L + i));
+                            } catch (Exception e) {
+                                result.recordError(e);
+                                continue;
+                            }
+                            if (count == latencies.length) {
+                                latencies = Arrays.copyOf(latencies, count * 2);
+                            }
+                            latencies[count++] = System.nanoTime() - start;
+                        }
+                        return Arrays.copyOf(latencies, count);
+                    }
+                }));
+            }
+            ready.await();
+            go.countDown();
+            List<long[]> all = new ArrayList<long[]>();
+            int total = 0;
+            for (Future<long[]> future : futures) {
+                long[] latencies = future.get();
+                all.add(latencies);
+                total += latencies.length;
+            }
+            result.latencies = new long[total];
+            int offset = 0;
+            for (long[] latencies : all) {
+                System.arraycopy(latencies, 0, result.latencies, offset, latencies.length);
+                offset += latencies.length;
+            }
+            Arrays.sort(result.latencies);
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * 模拟一次下载:通过响应对象导出,返回写出的字节数
+     *
+     * @param engine 导出方式
+     * @param seed   数据随机种子
+     */
+    private long download(LoadEngineEnum engine, long seed) throws Exception {
+        CountingOutputStream os = new CountingOutputStream();
+        HttpServletResponse response = mockResponse(os);
+        SimpleExport export = new SimpleExport(response, "压测报表", engine.excelVersionEnum, "明细");
+        try {
+            if (engine.streaming) {
+                export.useStreaming();
+            }
+            render(export, new Random(seed));
+            export.excelGenerate();
+        } finally {
+            export.close();
+        }
+        return os.count;
+    }
+
+    /**
+     * 导出内容:合并标题、两行合并表头、数据行(下拉选项、合并备注),末尾合计行
+     */
+    private void render(SimpleExport export, Random random) {
+        CellStyle deputy = export.getDeputyTitleStyle();
+        export.createRow(export.getMainTitleStyle(), 30, export.set("销售明细压测报表", 8, 1));
+        export.createRow(deputy,
+                export.set("门店", 1, 2), export.set("日期", 1, 2), export.set("销售", 3, 1),
+                export.set("状态", 1, 2), export.set("备注", 2, 2));
+        export.createRow(deputy, export.set("数量"), export.set("单价"), export.set("金额"));
+        long qtyTotal = 0;
+        BigDecimal amountTotal = BigDecimal.ZERO;
+        for (int i = 0; i < rows; i++) {
+            int qty = 1 + random.nextInt(500);
+            double price = (1 + random.nextInt(100000)) / 100.0;
+            BigDecimal amount = BigDecimal.valueOf(price).multiply(BigDecimal.valueOf(qty));
+            qtyTotal += qty;
+            amountTotal = amountTotal.add(amount);
+            export.createRow(
+                    export.set(STORES[random.nextInt(STORES.length)]),
+                    export.set("2026-10-" + (10 + i % 20)),
+                    export.set(qty),
+                    export.set(price),
+                    export.set(amount),
+                    export.set(STATUS_OPTIONS),
+                    export.set("备注" + Long.toHexString(random.nextLong()), 2));
+        }
+        export.createRow(deputy, export.set("合计", 2), export.set(qtyTotal), export.set(null),
+                export.set(amountTotal), export.set(null), export.set(null, 2));
+    }
+
+    /**
+     * 代理生成的响应对象:只提供输出流,设置响应头等方法为空操作
+     */
+    private static HttpServletResponse mockResponse(final ServletOutputStream os) {
+        return (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getOutputStream".equals(method.getName())) {
+                            return os;
+                        }
+                        Class<?> type = method.getReturnType();
+                        if (type == boolean.class) {
+                            return false;
+                        } else if (type == int.class) {
+                            return 0;
+                        } else if (type == long.class) {
+                            return 0L;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * 只统计字节数的响应输出流
+     */
+    private static class CountingOutputStream extends ServletOutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+
+    /**
+     * 一种导出方式的压测结果
+     */
+    private static class LoadResult {
+
+        private final LoadEngineEnum engine;
+
+        /**
+         * 成功请求的延迟(纳秒),已排序
+         */
+        private long[] latencies;
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        private final AtomicLong errors = new AtomicLong();
+
+        private volatile String firstError;
+
+        private long elapsed;
+
+        private long peakHeap;
+
+        private long gcCount;
+
+        private long gcTime;
+
+        private final List<String> collectors = new ArrayList<String>();
+
+        LoadResult(LoadEngineEnum engine) {
+            this.engine = engine;
+        }
+
+        void recordError(Exception e) {
+            if (errors.getAndIncrement() == 0) {
+                firstError = e.toString();
+            }
+        }
+
+        /**
+         * 分位数(毫秒)
+         */
+        private double percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+        }
+
+        String format() {
+            double seconds = elapsed / 1e9;
+            int count = latencies.length;
+            return String.format("%-12s%-8s%-8s%8d%7d%9.1f%9.1f%9.1f%9.1f%9.2f%9.2f%10.1f%10.1f%8d%10d",
+                    engine.name().toLowerCase(), engine.engine, engine.excelVersionEnum.getSuffix(),
+                    count, errors.get(), percentile(0.5), percentile(0.9), percentile(0.99), percentile(1),
+                    count / seconds, bytes.get() / seconds / (1 << 20), count > 0 ? bytes.get() / 1024.0 / count : 0,
+                    peakHeap / (double) (1 << 20), gcCount, gcTime);
+        }
+    }
+
+}
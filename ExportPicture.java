@@ -0,0 +1,182 @@
+package com.demo.video.util;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.util.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 导出图片
+ * <br>作为单元格值传入set,合并计算时在该单元格(含合并区域)的位置插入图片
+ * <br>图片数据按内容摘要缓存在进程内,同一文件或资源只读取一次,相同内容只保留一个对象;
+ * 同一工作簿中相同内容的图片只写入一次
+ */
+public class ExportPicture {
+
+    /**
+     * 进程内缓存的最大图片数
+     */
+    private static final int CACHE_SIZE = 128;
+
+    /**
+     * 进程内缓存:内容摘要、文件、资源 - 图片
+     */
+    private static final Map<String, ExportPicture> CACHE = new LinkedHashMap<String, ExportPicture>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ExportPicture> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * 图片数据,不可修改
+     */
+    private final byte[] data;
+
+    /**
+     * 图片类型:Workbook.PICTURE_TYPE_*
+     */
+    private final int pictureType;
+
+    /**
+     * 内容摘要
+     */
+    private final String key;
+
+    private ExportPicture(byte[] data, int pictureType, String key) {
+        this.data = data;
+        this.pictureType = pictureType;
+        this.key = key;
+    }
+
+    /**
+     * 由图片数据创建,自动识别PNG、JPEG
+     *
+     * @param data 图片数据,创建后不能再修改
+     */
+    public static ExportPicture of(byte[] data) {
+        return of(data, detectType(data));
+    }
+
+    /**
+     * 由图片数据创建
+     *
+     * @param data        图片数据,创建后不能再修改
+     * @param pictureType 图片类型:Workbook.PICTURE_TYPE_*
+     */
+    public static ExportPicture of(byte[] data, int pictureType) {
+        String key = pictureType + ":" + ExportCache.toHex(ExportCache.newDigest().digest(data));
+        synchronized (CACHE) {
+            ExportPicture picture = CACHE.get(key);
+            if (picture == null) {
+                picture = new ExportPicture(data, pictureType, key);
+                CACHE.put(key, picture);
+            }
+            return picture;
+        }
+    }
+
+    /**
+     * 由图片文件创建,文件未修改时不重复读取
+     *
+     * @param file 图片文件
+     */
+    public static ExportPicture of(File file) throws IOException {
+        String source = "file:" + file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length();
+        ExportPicture picture = cached(source);
+        if (picture == null) {
+            InputStream is = new FileInputStream(file);
+            try {
+                picture = cache(source, of(IOUtils.toByteArray(is)));
+            } finally {
+                IOUtils.closeQuietly(is);
+            }
+        }
+        return picture;
+    }
+
+    /**
+     * 由类路径资源创建,只读取一次
+     *
+     * @param resource 资源路径,例:/images/logo.png
+     */
+    public static ExportPicture ofResource(String resource) throws IOException {
+        String source = "resource:" + resource;
+        ExportPicture picture = cached(source);
+        if (picture == null) {
+            InputStream is = ExportPicture.class.getResourceAsStream(resource);
+            if (is == null) {
+                throw new IOException("图片资源不存在:" + resource);
+            }
+            try {
+                picture = cache(source, of(IOUtils.toByteArray(is)));
+            } finally {
+                IOUtils.closeQuietly(is);
+            }
+        }
+        return picture;
+    }
+
+    /**
+     * 清空进程内缓存
+     */
+    public static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static ExportPicture cached(String source) {
+        synchronized (CACHE) {
+            return CACHE.get(source);
+        }
+    }
+
+    private static ExportPicture cache(String source, ExportPicture picture) {
+        synchronized (CACHE) {
+            CACHE.put(source, picture);
+        }
+        return picture;
+    }
+
+    /**
+     * 识别图片类型
+     *
+     * @param data 图片数据
+     */
+    private static int detectType(byte[] data) {
+        if (data.length > 8 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return Workbook.PICTURE_TYPE_PNG;
+        }
+        if (data.length > 3 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8) {
+            return Workbook.PICTURE_TYPE_JPEG;
+        }
+        throw new IllegalStateException("无法识别图片格式,仅支持PNG、JPEG,其它格式请指定图片类型");
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    public int getPictureType() {
+        return pictureType;
+    }
+
+    /**
+     * 内容摘要:图片类型+SHA-256
+     */
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "picture:" + key;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.demo.video.util;
+
+/**
+ * 导出进度监听
+ * <br>合并计算时每处理指定行数回调一次,写出时每写出1MB回调一次,各阶段结束时再回调一次
+ * <br>回调在导出线程中执行,应尽快返回
+ */
+public interface ExportProgressListener {
+
+    /**
+     * 导出阶段
+     */
+    enum PhaseEnum {
+        /**
+         * 合并计算:进度单位为行
+         */
+        LAYOUT,
+        /**
+         * 写出:进度单位为字节
+         */
+        WRITE
+    }
+
+    /**
+     * 进度回调
+     *
+     * @param phase      导出阶段
+     * @param done       已完成的行数(合并计算)或字节数(写出)
+     * @param total      总数,未知时为-1
+     * @param throughput 每秒完成的行数或字节数
+     * @param etaMillis  预计剩余时间（毫秒）,未知时为-1
+     */
+    void onProgress(PhaseEnum phase, long done, long total, double throughput, long etaMillis);
+
+}
@@ -0,0 +1,96 @@
+package com.demo.video.util;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+import java.io.IOException;
+
+/**
+ * 导出渲染器
+ * <br>由ExportDefinition.newRenderer创建,每次导出一个,只能在一个线程中使用
+ * <br>创建时按定义创建样式、应用列宽行高并写入表头行,之后按数据列样式添加数据行
+ * <br>合并计算使用线程内复用的占用记录表,同一线程中连续导出时不再重复分配;
+ * 记录表只复用不超过32768个单元格(行数×列数)的表格,每个线程最多保留约128KB,更大的表格每次单独分配
+ */
+public class ExportRenderer {
+
+    private final ExportDefinition definition;
+
+    private final SimpleExport export;
+
+    /**
+     * 按序号创建的样式
+     */
+    private final CellStyle[] cellStyles;
+
+    /**
+     * 数据列样式
+     */
+    private final CellStyle[] columnStyles;
+
+    /**
+     * 导出渲染器构造
+     *
+     * @param definition 导出定义
+     * @param export     导出对象
+     */
+    ExportRenderer(ExportDefinition definition, SimpleExport export) {
+        this.definition = definition;
+        this.export = export;
+        export.useRecordScratch();
+        this.cellStyles = definition.createStyles(export);
+        int[] styleIndexes = definition.getColumnStyles();
+        this.columnStyles = new CellStyle[styleIndexes.length];
+        for (int i = 0; i < styleIndexes.length; i++) {
+            columnStyles[i] = cellStyles[styleIndexes[i]];
+        }
+        definition.apply(export, cellStyles);
+    }
+
+    /**
+     * 添加数据行:按顺序使用数据列样式,超出定义的列使用内容样式
+     *
+     * @param values 单元格值,支持set方法的所有值类型
+     */
+    public void addRow(Object... values) {
+        Object[][] columns = new Object[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            columns[i] = export.set(values[i], i < columnStyles.length ? columnStyles[i] : export.getContentStyle());
+        }
+        export.createRow(columns);
+    }
+
+    /**
+     * 获取定义中的样式,用于自定义行
+     *
+     * @param styleName 样式名称
+     */
+    public CellStyle getStyle(String styleName) {
+        int index = definition.getStyleIndex(styleName);
+        if (index < 0) {
+            throw new IllegalStateException("样式未定义:" + styleName);
+        }
+        return cellStyles[index];
+    }
+
+    /**
+     * 导出对象,用于添加自定义行、合并单元格等
+     */
+    public SimpleExport getExport() {
+        return export;
+    }
+
+    /**
+     * 生成Excel
+     */
+    public void generate() throws IOException {
+        export.excelGenerate();
+    }
+
+    /**
+     * 关闭IO并释放工作簿
+     */
+    public void close() {
+        export.close();
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.demo.video.util;
+
+/**
+ * 合并计算诊断
+ * <br>测试模式下记录单元格放置事件,事件保存在固定大小的环形缓冲区中,只保留最近的事件
+ * <br>合并计算结束后一次遍历占用记录表,检查重叠(单元格被重复占用)和空洞(行内已占用单元格左侧的空位)
+ * <br>坐标均为表格内坐标,不含起始位置偏移
+ */
+public class LayoutDiagnostics {
+
+    /**
+     * 空洞位置最多记录数
+     */
+    private static final int MAX_HOLES = 20;
+
+    /**
+     * 环形缓冲区容量
+     */
+    private final int capacity;
+
+    /**
+     * 放置事件:数据容器行、起始行、结束行、起始列、结束列、重叠单元格数
+     */
+    private final int[] valsRows;
+    private final int[] firstRows;
+    private final int[] lastRows;
+    private final int[] firstCols;
+    private final int[] lastCols;
+    private final int[] overlaps;
+
+    /**
+     * 事件总数
+     */
+    private long eventCount = 0;
+
+    /**
+     * 重叠单元格总数
+     */
+    private long overlapCount = 0;
+
+    /**
+     * 空洞总数
+     */
+    private long holeCount = 0;
+
+    /**
+     * 空洞位置:{行,列}
+     */
+    private int[][] holes = new int[MAX_HOLES][];
+
+    /**
+     * 表格大小
+     */
+    private int rows;
+    private int cols;
+
+    /**
+     * 合并计算诊断构造
+     *
+     * @param capacity 保留的最近事件数
+     */
+    public LayoutDiagnostics(int capacity) {
+        this.capacity = capacity;
+        valsRows = new int[capacity];
+        firstRows = new int[capacity];
+        lastRows = new int[capacity];
+        firstCols = new int[capacity];
+        lastCols = new int[capacity];
+        overlaps = new int[capacity];
+    }
+
+    /**
+     * 记录放置事件
+     *
+     * @param valsRow  数据容器行
+     * @param firstRow 起始行
+     * @param lastRow  结束行
+     * @param firstCol 起始列
+     * @param lastCol  结束列
+     * @param overlap  重叠单元格数
+     */
+    void record(int valsRow, int firstRow, int lastRow, int firstCol, int lastCol, int overlap) {
+        int i = (int) (eventCount++ % capacity);
+        valsRows[i] = valsRow;
+        firstRows[i] = firstRow;
+        lastRows[i] = lastRow;
+        firstCols[i] = firstCol;
+        lastCols[i] = lastCol;
+        overlaps[i] = overlap;
+        overlapCount += overlap;
+    }
+
+    /**
+     * 检查空洞:一次遍历占用记录表
+     *
+     * @param record 占用记录表
+     */
+    void validate(int[][] record) {
+        rows = record.length;
+        cols = rows > 0 ? record[0].length : 0;
+        holeCount = 0;
+        for (int m = 0; m < rows; m++) {
+            //从右向左:出现已占用单元格后,其左侧的空位即为空洞
+            boolean isUsed = false;
+            for (int n = cols - 1; n >= 0; n--) {
+                if (record[m][n] != 0) {
+                    isUsed = true;
+                } else if (isUsed) {
+                    if (holeCount < MAX_HOLES) {
+                        holes[(int) holeCount] = new int[]{m, n};
+                    }
+                    holeCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * 重叠单元格总数
+     */
+    public long getOverlapCount() {
+        return overlapCount;
+    }
+
+    /**
+     * 空洞总数
+     */
+    public long getHoleCount() {
+        return holeCount;
+    }
+
+    /**
+     * 是否通过检查
+     */
+    public boolean isValid() {
+        return overlapCount == 0 && holeCount == 0;
+    }
+
+    /**
+     * 诊断摘要
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("表格:").append(rows).append("行").append(cols).append("列")
+                .append(" 放置:").append(eventCount)
+                .append(" 重叠:").append(overlapCount)
+                .append(" 空洞:").append(holeCount);
+        for (int i = 0; i < holeCount && i < MAX_HOLES; i++) {
+            sb.append(i == 0 ? " [" : ",").append(holes[i][0]).append(":").append(holes[i][1]);
+        }
+        if (holeCount > 0) {
+            sb.append(holeCount > MAX_HOLES ? ",...]" : "]");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 最近的放置事件,由旧到新
+     */
+    public String recentEvents() {
+        StringBuilder sb = new StringBuilder();
+        long start = Math.max(0, eventCount - capacity);
+        for (long e = start; e < eventCount; e++) {
+            int i = (int) (e % capacity);
+            sb.append("#").append(valsRows[i]).append(" [").append(firstRows[i]).append(",").append(firstCols[i])
+                    .append("]-[").append(lastRows[i]).append(",").append(lastCols[i]).append("]");
+            if (overlaps[i] > 0) {
+                sb.append(" 重叠").append(overlaps[i]);
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 绘制占用记录表
+     *
+     * @param record   占用记录表
+     * @param firstRow 起始行
+     * @param lastRow  结束行(含)
+     */
+    public static String render(int[][] record, int firstRow, int lastRow) {
+        StringBuilder sb = new StringBuilder("----------------------------------------\n");
+        for (int i = Math.max(0, firstRow); i <= lastRow && i < record.length; i++) {
+            sb.append(" | ");
+            for (int j = 0; j < record[i].length; j++) {
+                sb.append(record[i][j] != 0 ? "    ■" : "    □");
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+}
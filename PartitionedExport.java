@@ -0,0 +1,935 @@
+package com.demo.video.util;
+
+import org.apache.poi.util.IOUtils;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+import javax.xml.stream.events.*;
+import java.io.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 分片导出
+ * <br>多个线程或进程各自通过SimpleExport生成一个分片(Excel2007流式导出,字符串内联),写入共享目录
+ * <br>分片写完后原子重命名为part-序号.xlsx,合并步骤只在ZIP和XML层面拼接分片,不解析单元格内容
+ * <br>合并方式:每个分片作为一个sheet页,或所有分片的行依次追加到同一个sheet页
+ * <br>各分片须使用相同的样式创建顺序(同一份导出代码),合并时只保留第一个分片的样式表
+ */
+public class PartitionedExport {
+
+    /**
+     * 合并方式
+     */
+    public enum MergeModeEnum {
+        /**
+         * 每个分片一个sheet页
+         */
+        SHEETS,
+        /**
+         * 分片的行依次追加到第一个分片的sheet页
+         */
+        ROWS
+    }
+
+    /**
+     * Excel2007最大行数
+     */
+    private static final int MAX_ROWS = 1048576;
+
+    /**
+     * 等待分片时的轮询间隔（毫秒）
+     */
+    private static final long POLL_INTERVAL = 200;
+
+    /**
+     * 分片中的sheet页
+     */
+    private static final String SHEET_ENTRY = "xl/worksheets/sheet1.xml";
+    private static final String WORKBOOK_ENTRY = "xl/workbook.xml";
+    private static final String WORKBOOK_RELS_ENTRY = "xl/_rels/workbook.xml.rels";
+    private static final String CONTENT_TYPES_ENTRY = "[Content_Types].xml";
+    private static final String STYLES_ENTRY = "xl/styles.xml";
+    private static final String SHARED_STRINGS_ENTRY = "xl/sharedStrings.xml";
+
+    private static final String WORKSHEET_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml";
+    private static final String WORKSHEET_REL_TYPE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet";
+
+    /**
+     * sheet页中sheetData之后的元素顺序(合并后的mergeCells、conditionalFormatting、dataValidations按此顺序插入)
+     */
+    private static final List<String> TRAILER_ORDER = Arrays.asList("sheetCalcPr", "sheetProtection", "protectedRanges",
+            "scenarios", "autoFilter", "sortState", "dataConsolidate", "customSheetViews", "mergeCells", "phoneticPr",
+            "conditionalFormatting", "dataValidations");
+
+    /**
+     * 单元格引用:列字母+行号,排除函数名(如LOG10)和名称
+     */
+    /**
+     * sheetView开始标签中的选中状态
+     */
+    private static final Pattern TAB_SELECTED = Pattern.compile("(<sheetView\\b[^>]*?)\\s+tabSelected=\"[^\"]*\"");
+
+    private static final byte[] SHEET_DATA_START = {'<', 's', 'h', 'e', 'e', 't', 'D', 'a', 't', 'a'};
+
+    private static final Pattern CELL_REF = Pattern.compile("(?<![A-Za-z0-9_.$])(\\$?[A-Z]{1,3}\\$?)(\\d+)(?![A-Za-z0-9_(])");
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    }
+
+    /**
+     * 共享目录
+     */
+    private final File directory;
+
+    /**
+     * 分片导出构造
+     *
+     * @param directory 共享目录,不存在则自动创建
+     */
+    public PartitionedExport(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建分片目录:" + directory);
+        }
+        this.directory = directory;
+    }
+
+    // ----------------------------------------分片----------------------------------------
+
+    /**
+     * 创建分片导出
+     * <br>写入临时文件,生成并关闭后调用commitPart提交
+     *
+     * @param index     分片序号,从0开始
+     * @param sheetName sheet页名称(按sheet页合并时使用)
+     */
+    public SimpleExport createPart(int index, String sheetName) throws FileNotFoundException {
+        SimpleExport export = new SimpleExport(tempPartFile(index), SimpleExport.ExcelVersionEnum.EXCEL2007, sheetName);
+        //流式导出的字符串写在单元格内,合并时无需合并共享字符串表
+        export.useStreaming();
+        return export;
+    }
+
+    /**
+     * 提交分片:将临时文件原子重命名为分片文件
+     *
+     * @param index 分片序号
+     */
+    public void commitPart(int index) throws IOException {
+        File temp = tempPartFile(index);
+        File part = getPartFile(index);
+        if (!temp.isFile()) {
+            throw new IOException("分片未生成:" + temp);
+        }
+        part.delete();
+        if (!temp.renameTo(part)) {
+            throw new IOException("无法提交分片:" + part);
+        }
+    }
+
+    /**
+     * 分片文件
+     *
+     * @param index 分片序号
+     */
+    public File getPartFile(int index) {
+        return new File(directory, "part-" + index + ".xlsx");
+    }
+
+    /**
+     * 分片临时文件,与分片文件在同一目录,保证重命名是原子的
+     *
+     * @param index 分片序号
+     */
+    private File tempPartFile(int index) {
+        return new File(directory, "part-" + index + ".xlsx.tmp");
+    }
+
+    /**
+     * 等待所有分片提交
+     *
+     * @param partCount     分片数量
+     * @param timeoutMillis 超时时间（毫秒）
+     * @return 是否全部提交
+     */
+    public boolean awaitParts(int partCount, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        int committed = 0;
+        while (true) {
+            while (committed < partCount && getPartFile(committed).isFile()) {
+                committed++;
+            }
+            if (committed == partCount) {
+                return true;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * 删除所有分片文件及临时文件
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith("part-")) {
+                file.delete();
+            }
+        }
+    }
+
+    // ----------------------------------------合并----------------------------------------
+
+    /**
+     * 合并分片到文件
+     * <br>先写入临时文件,完成后重命名为目标文件
+     *
+     * @param target    目标文件
+     * @param partCount 分片数量
+     * @param mode      合并方式
+     */
+    public void merge(File target, int partCount, MergeModeEnum mode) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        OutputStream os = new FileOutputStream(temp);
+        try {
+            merge(os, partCount, mode);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(os);
+            temp.delete();
+            throw e;
+        } catch (RuntimeException e) {
+            IOUtils.closeQuietly(os);
+            temp.delete();
+            throw e;
+        }
+        os.close();
+        target.delete();
+        if (!temp.renameTo(target)) {
+            throw new IOException("无法写入合并文件:" + target);
+        }
+    }
+
+    /**
+     * 合并分片到输出流,不关闭输出流
+     *
+     * @param os        输出流
+     * @param partCount 分片数量
+     * @param mode      合并方式
+     */
+    public void merge(OutputStream os, int partCount, MergeModeEnum mode) throws IOException {
+        if (partCount <= 0) {
+            throw new IllegalStateException("分片数量必须大于0");
+        }
+        List<ZipFile> parts = new ArrayList<ZipFile>();
+        try {
+            for (int i = 0; i < partCount; i++) {
+                File file = getPartFile(i);
+                if (!file.isFile()) {
+                    throw new IllegalStateException("分片未提交:" + file);
+                }
+                parts.add(new ZipFile(file));
+            }
+            checkParts(parts);
+            ZipOutputStream zos = new ZipOutputStream(os);
+            if (mode == MergeModeEnum.SHEETS) {
+                mergeSheets(parts, zos);
+            } else {
+                mergeRows(parts, zos);
+            }
+            zos.finish();
+            zos.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("分片格式错误", e);
+        } finally {
+            for (ZipFile part : parts) {
+                IOUtils.closeQuietly(part);
+            }
+        }
+    }
+
+    /**
+     * 检查分片:必须只有一个sheet页、不使用共享字符串、样式表一致
+     *
+     * @param parts 分片
+     */
+    private void checkParts(List<ZipFile> parts) throws IOException, XMLStreamException {
+        long stylesCrc = -1;
+        for (int i = 0; i < parts.size(); i++) {
+            ZipFile part = parts.get(i);
+            if (part.getEntry(SHEET_ENTRY) == null || readSheetNames(part).size() != 1) {
+                throw new IllegalStateException("分片必须只有一个sheet页:" + part.getName());
+            }
+            if (countSharedStrings(part) > 0) {
+                throw new IllegalStateException("分片不能使用共享字符串,请使用流式导出:" + part.getName());
+            }
+            ZipEntry styles = part.getEntry(STYLES_ENTRY);
+            long crc = styles != null ? styles.getCrc() : 0;
+            if (i == 0) {
+                stylesCrc = crc;
+            } else if (crc != stylesCrc) {
+                throw new IllegalStateException("分片样式与第一个分片不一致:" + part.getName());
+            }
+        }
+    }
+
+    /**
+     * 按sheet页合并:第一个分片的工作簿结构,加上每个分片的sheet页
+     *
+     * @param parts 分片
+     * @param zos   输出
+     */
+    private void mergeSheets(List<ZipFile> parts, ZipOutputStream zos) throws IOException, XMLStreamException {
+        ZipFile first = parts.get(0);
+        //sheet页名称,重名时追加分片序号
+        List<String> names = new ArrayList<String>();
+        Set<String> used = new HashSet<String>();
+        for (int i = 0; i < parts.size(); i++) {
+            String name = readSheetNames(parts.get(i)).get(0);
+            if (!used.add(name.toLowerCase())) {
+                String suffix = "(" + i + ")";
+                name = name.substring(0, Math.min(name.length(), 31 - suffix.length())) + suffix;
+                used.add(name.toLowerCase());
+            }
+            names.add(name);
+        }
+
+        Enumeration<? extends ZipEntry> entries = first.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (SHEET_ENTRY.equals(name)) {
+                continue;
+            }
+            zos.putNextEntry(new ZipEntry(name));
+            if (WORKBOOK_ENTRY.equals(name)) {
+                writeWorkbook(first, names, zos);
+            } else if (WORKBOOK_RELS_ENTRY.equals(name)) {
+                writeWorkbookRels(first, names.size(), zos);
+            } else if (CONTENT_TYPES_ENTRY.equals(name)) {
+                writeContentTypes(first, names.size(), zos);
+            } else {
+                copyEntry(first, entry, zos);
+            }
+            zos.closeEntry();
+        }
+
+        for (int i = 0; i < parts.size(); i++) {
+            zos.putNextEntry(new ZipEntry("xl/worksheets/sheet" + (i + 1) + ".xml"));
+            ZipFile part = parts.get(i);
+            if (i == 0) {
+                copyEntry(part, part.getEntry(SHEET_ENTRY), zos);
+            } else {
+                copyUnselectedSheet(part, zos);
+            }
+            zos.closeEntry();
+        }
+    }
+
+    /**
+     * 复制分片的sheet页并取消选中状态(只有第一个sheet页处于选中状态)
+     * <br>sheetView位于行数据之前:只读取并修改行数据之前的头部,其余按字节复制
+     *
+     * @param part 分片
+     * @param os   输出
+     */
+    private static void copyUnselectedSheet(ZipFile part, OutputStream os) throws IOException {
+        InputStream is = new BufferedInputStream(part.getInputStream(part.getEntry(SHEET_ENTRY)));
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            int matched = 0;
+            while (matched < SHEET_DATA_START.length) {
+                int b = is.read();
+                if (b < 0) {
+                    break;
+                }
+                header.write(b);
+                matched = b == SHEET_DATA_START[matched] ? matched + 1 : (b == SHEET_DATA_START[0] ? 1 : 0);
+            }
+            os.write(TAB_SELECTED.matcher(header.toString("UTF-8")).replaceAll("$1").getBytes("UTF-8"));
+            IOUtils.copy(is, os);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * 按行合并:第一个分片的sheet页头部和尾部,依次追加每个分片的行
+     * <br>行号、单元格引用、合并区域、数据有效性、条件格式、公式中的引用按已追加的行数平移
+     *
+     * @param parts 分片
+     * @param zos   输出
+     */
+    private void mergeRows(List<ZipFile> parts, ZipOutputStream zos) throws IOException, XMLStreamException {
+        ZipFile first = parts.get(0);
+        Enumeration<? extends ZipEntry> entries = first.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            zos.putNextEntry(new ZipEntry(entry.getName()));
+            if (SHEET_ENTRY.equals(entry.getName())) {
+                XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(nonClosing(zos), "UTF-8");
+                try {
+                    new RowsMerger(writer).merge(parts);
+                    writer.flush();
+                } finally {
+                    writer.close();
+                }
+            } else {
+                copyEntry(first, entry, zos);
+            }
+            zos.closeEntry();
+        }
+    }
+
+    /**
+     * 按行合并sheet页
+     */
+    private static class RowsMerger {
+
+        private final XMLEventWriter writer;
+
+        /**
+         * 已追加的行数(当前分片的平移量)
+         */
+        private int offset = 0;
+
+        /**
+         * 合并后的合并区域、条件格式、数据有效性
+         */
+        private List<String> mergeRefs = new ArrayList<String>();
+        private List<List<XMLEvent>> conditionalFormats = new ArrayList<List<XMLEvent>>();
+        private List<List<XMLEvent>> dataValidations = new ArrayList<List<XMLEvent>>();
+
+        /**
+         * 第一个分片sheetData之后的其它元素
+         */
+        private List<List<XMLEvent>> trailer = new ArrayList<List<XMLEvent>>();
+
+        /**
+         * 第一个分片的sheetData结束、根元素结束
+         */
+        private XMLEvent sheetDataEnd;
+        private XMLEvent rootEnd;
+
+        /**
+         * 条件格式优先级
+         */
+        private int priority = 0;
+
+        RowsMerger(XMLEventWriter writer) {
+            this.writer = writer;
+        }
+
+        void merge(List<ZipFile> parts) throws IOException, XMLStreamException {
+            for (int i = 0; i < parts.size(); i++) {
+                XMLEventReader reader = openReader(parts.get(i), SHEET_ENTRY);
+                try {
+                    offset += readPart(reader, i == 0);
+                } finally {
+                    reader.close();
+                }
+            }
+            writer.add(sheetDataEnd);
+            //按元素顺序插入合并后的元素
+            int pending = TRAILER_ORDER.indexOf("mergeCells");
+            for (List<XMLEvent> element : trailer) {
+                int rank = TRAILER_ORDER.indexOf(localName(element.get(0)));
+                pending = writeCombined(pending, rank < 0 ? TRAILER_ORDER.size() : rank);
+                writeAll(element);
+            }
+            writeCombined(pending, TRAILER_ORDER.size());
+            writer.add(rootEnd);
+            writer.add(EVENT_FACTORY.createEndDocument());
+        }
+
+        /**
+         * 读取一个分片
+         *
+         * @param reader  分片sheet页
+         * @param isFirst 是否第一个分片:输出头部并保留尾部
+         * @return 分片行数(最大行号)
+         */
+        private int readPart(XMLEventReader reader, boolean isFirst) throws XMLStreamException {
+            int lastRow = 0;
+            int depth = 0;
+            boolean inData = false;
+            boolean afterData = false;
+            //当前顶层元素:直接输出或暂存
+            boolean isWrite = false;
+            List<XMLEvent> sink = null;
+            String current = null;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartDocument()) {
+                    if (isFirst) {
+                        writer.add(event);
+                    }
+                    continue;
+                }
+                if (event.isEndDocument()) {
+                    continue;
+                }
+                if (event.isStartElement()) {
+                    depth++;
+                    StartElement start = event.asStartElement();
+                    current = start.getName().getLocalPart();
+                    if ("row".equals(current)) {
+                        String r = attribute(start, "r");
+                        if (r != null) {
+                            int row = Integer.parseInt(r);
+                            if (row + offset > MAX_ROWS) {
+                                throw new IllegalStateException("合并后行数超过Excel2007上限:" + MAX_ROWS);
+                            }
+                            lastRow = Math.max(lastRow, row);
+                            event = replaceAttribute(start, "r", String.valueOf(row + offset));
+                        }
+                    } else if ("c".equals(current)) {
+                        event = shiftAttribute(start, "r", offset);
+                    } else if ("f".equals(current)) {
+                        event = shiftAttribute(start, "ref", offset);
+                    } else if ("mergeCell".equals(current)) {
+                        mergeRefs.add(shiftRefs(attribute(start, "ref"), offset));
+                    } else if ("conditionalFormatting".equals(current) || "dataValidation".equals(current)) {
+                        event = shiftAttribute(start, "sqref", offset);
+                    } else if ("cfRule".equals(current)) {
+                        event = replaceAttribute(start, "priority", String.valueOf(++priority));
+                    }
+
+                    if (depth == 1) {
+                        if (isFirst) {
+                            writer.add(event);
+                        }
+                        continue;
+                    }
+                    if (depth == 2) {
+                        if ("sheetData".equals(current)) {
+                            inData = true;
+                            if (isFirst) {
+                                writer.add(event);
+                            }
+                            continue;
+                        }
+                        isWrite = false;
+                        sink = null;
+                        if (!afterData) {
+                            //头部只保留第一个分片,尺寸合并后失效
+                            isWrite = isFirst && !"dimension".equals(current);
+                        } else if ("conditionalFormatting".equals(current)) {
+                            sink = new ArrayList<XMLEvent>();
+                            conditionalFormats.add(sink);
+                        } else if (isFirst && !"mergeCells".equals(current) && !"dataValidations".equals(current)) {
+                            sink = new ArrayList<XMLEvent>();
+                            trailer.add(sink);
+                        }
+                    } else if (depth == 3 && afterData && "dataValidation".equals(current)) {
+                        sink = new ArrayList<XMLEvent>();
+                        dataValidations.add(sink);
+                    }
+                } else if (event.isEndElement()) {
+                    current = null;
+                    if (depth == 1) {
+                        if (isFirst) {
+                            rootEnd = event;
+                        }
+                        depth--;
+                        continue;
+                    }
+                    if (depth == 2 && inData) {
+                        inData = false;
+                        afterData = true;
+                        if (isFirst) {
+                            sheetDataEnd = event;
+                        }
+                        depth--;
+                        continue;
+                    }
+                } else if (event.isCharacters() && current != null && isFormula(current)) {
+                    event = EVENT_FACTORY.createCharacters(shiftRefs(event.asCharacters().getData(), offset));
+                }
+
+                if (inData || isWrite) {
+                    writer.add(event);
+                } else if (sink != null) {
+                    sink.add(event);
+                }
+                if (event.isEndElement()) {
+                    depth--;
+                    if (depth == 1) {
+                        isWrite = false;
+                        sink = null;
+                    } else if (depth == 2 && "dataValidation".equals(event.asEndElement().getName().getLocalPart())) {
+                        sink = null;
+                    }
+                }
+            }
+            return lastRow;
+        }
+
+        /**
+         * 输出排在指定位置之前的合并后元素
+         *
+         * @param pending 尚未输出的第一个位置
+         * @param rank    当前元素的位置
+         * @return 尚未输出的第一个位置
+         */
+        private int writeCombined(int pending, int rank) throws XMLStreamException {
+            QName name = ((EndElement) sheetDataEnd).getName();
+            String prefix = name.getPrefix();
+            String ns = name.getNamespaceURI();
+            for (; pending < rank && pending < TRAILER_ORDER.size(); pending++) {
+                String element = TRAILER_ORDER.get(pending);
+                if ("mergeCells".equals(element) && !mergeRefs.isEmpty()) {
+                    writer.add(EVENT_FACTORY.createStartElement(prefix, ns, "mergeCells",
+                            Collections.singletonList(EVENT_FACTORY.createAttribute("count", String.valueOf(mergeRefs.size()))).iterator(), null));
+                    for (String ref : mergeRefs) {
+                        writer.add(EVENT_FACTORY.createStartElement(prefix, ns, "mergeCell",
+                                Collections.singletonList(EVENT_FACTORY.createAttribute("ref", ref)).iterator(), null));
+                        writer.add(EVENT_FACTORY.createEndElement(prefix, ns, "mergeCell"));
+                    }
+                    writer.add(EVENT_FACTORY.createEndElement(prefix, ns, "mergeCells"));
+                } else if ("conditionalFormatting".equals(element)) {
+                    for (List<XMLEvent> events : conditionalFormats) {
+                        writeAll(events);
+                    }
+                } else if ("dataValidations".equals(element) && !dataValidations.isEmpty()) {
+                    writer.add(EVENT_FACTORY.createStartElement(prefix, ns, "dataValidations",
+                            Collections.singletonList(EVENT_FACTORY.createAttribute("count", String.valueOf(dataValidations.size()))).iterator(), null));
+                    for (List<XMLEvent> events : dataValidations) {
+                        writeAll(events);
+                    }
+                    writer.add(EVENT_FACTORY.createEndElement(prefix, ns, "dataValidations"));
+                }
+            }
+            return pending;
+        }
+
+        private void writeAll(List<XMLEvent> events) throws XMLStreamException {
+            for (XMLEvent event : events) {
+                writer.add(event);
+            }
+        }
+    }
+
+    // ----------------------------------------工作簿结构----------------------------------------
+
+    /**
+     * 输出工作簿:替换sheet页列表,去掉依赖sheet页序号的名称定义
+     *
+     * @param first 第一个分片
+     * @param names sheet页名称
+     * @param zos   输出
+     */
+    private static void writeWorkbook(ZipFile first, List<String> names, OutputStream zos) throws IOException, XMLStreamException {
+        XMLEventReader reader = openReader(first, WORKBOOK_ENTRY);
+        XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(nonClosing(zos), "UTF-8");
+        try {
+            int skip = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (skip > 0) {
+                    skip += event.isStartElement() ? 1 : (event.isEndElement() ? -1 : 0);
+                    continue;
+                }
+                if (event.isStartElement() && "definedNames".equals(localName(event))) {
+                    skip = 1;
+                    continue;
+                }
+                if (event.isStartElement() && "sheet".equals(localName(event))) {
+                    //按第一个sheet元素的格式输出全部sheet页
+                    StartElement sheet = event.asStartElement();
+                    QName rid = relationshipIdName(sheet);
+                    for (int i = 0; i < names.size(); i++) {
+                        List<Attribute> attributes = new ArrayList<Attribute>();
+                        attributes.add(EVENT_FACTORY.createAttribute("name", names.get(i)));
+                        attributes.add(EVENT_FACTORY.createAttribute("sheetId", String.valueOf(i + 1)));
+                        attributes.add(EVENT_FACTORY.createAttribute(rid, "rIdPart" + (i + 1)));
+                        QName name = sheet.getName();
+                        writer.add(EVENT_FACTORY.createStartElement(name.getPrefix(), name.getNamespaceURI(), "sheet",
+                                attributes.iterator(), null));
+                        writer.add(EVENT_FACTORY.createEndElement(name.getPrefix(), name.getNamespaceURI(), "sheet"));
+                    }
+                    skip = 1;
+                    continue;
+                }
+                writer.add(event);
+            }
+            writer.flush();
+        } finally {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    /**
+     * 输出工作簿关系:替换sheet页关系
+     *
+     * @param first      第一个分片
+     * @param sheetCount sheet页数量
+     * @param zos        输出
+     */
+    private static void writeWorkbookRels(ZipFile first, int sheetCount, OutputStream zos) throws IOException, XMLStreamException {
+        XMLEventReader reader = openReader(first, WORKBOOK_RELS_ENTRY);
+        XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(nonClosing(zos), "UTF-8");
+        try {
+            boolean skip = false;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement() && "Relationship".equals(localName(event))
+                        && WORKSHEET_REL_TYPE.equals(attribute(event.asStartElement(), "Type"))) {
+                    skip = true;
+                    continue;
+                }
+                if (skip) {
+                    skip = !event.isEndElement();
+                    continue;
+                }
+                if (event.isEndElement() && "Relationships".equals(event.asEndElement().getName().getLocalPart())) {
+                    QName name = event.asEndElement().getName();
+                    for (int i = 1; i <= sheetCount; i++) {
+                        List<Attribute> attributes = new ArrayList<Attribute>();
+                        attributes.add(EVENT_FACTORY.createAttribute("Id", "rIdPart" + i));
+                        attributes.add(EVENT_FACTORY.createAttribute("Target", "worksheets/sheet" + i + ".xml"));
+                        attributes.add(EVENT_FACTORY.createAttribute("Type", WORKSHEET_REL_TYPE));
+                        writer.add(EVENT_FACTORY.createStartElement(name.getPrefix(), name.getNamespaceURI(), "Relationship",
+                                attributes.iterator(), null));
+                        writer.add(EVENT_FACTORY.createEndElement(name.getPrefix(), name.getNamespaceURI(), "Relationship"));
+                    }
+                }
+                writer.add(event);
+            }
+            writer.flush();
+        } finally {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    /**
+     * 输出内容类型:替换sheet页的内容类型
+     *
+     * @param first      第一个分片
+     * @param sheetCount sheet页数量
+     * @param zos        输出
+     */
+    private static void writeContentTypes(ZipFile first, int sheetCount, OutputStream zos) throws IOException, XMLStreamException {
+        XMLEventReader reader = openReader(first, CONTENT_TYPES_ENTRY);
+        XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(nonClosing(zos), "UTF-8");
+        try {
+            boolean skip = false;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement() && "Override".equals(localName(event))
+                        && WORKSHEET_CONTENT_TYPE.equals(attribute(event.asStartElement(), "ContentType"))) {
+                    skip = true;
+                    continue;
+                }
+                if (skip) {
+                    skip = !event.isEndElement();
+                    continue;
+                }
+                if (event.isEndElement() && "Types".equals(event.asEndElement().getName().getLocalPart())) {
+                    QName name = event.asEndElement().getName();
+                    for (int i = 1; i <= sheetCount; i++) {
+                        List<Attribute> attributes = new ArrayList<Attribute>();
+                        attributes.add(EVENT_FACTORY.createAttribute("PartName", "/xl/worksheets/sheet" + i + ".xml"));
+                        attributes.add(EVENT_FACTORY.createAttribute("ContentType", WORKSHEET_CONTENT_TYPE));
+                        writer.add(EVENT_FACTORY.createStartElement(name.getPrefix(), name.getNamespaceURI(), "Override",
+                                attributes.iterator(), null));
+                        writer.add(EVENT_FACTORY.createEndElement(name.getPrefix(), name.getNamespaceURI(), "Override"));
+                    }
+                }
+                writer.add(event);
+            }
+            writer.flush();
+        } finally {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    /**
+     * 读取工作簿中的sheet页名称
+     *
+     * @param part 分片
+     */
+    private static List<String> readSheetNames(ZipFile part) throws IOException, XMLStreamException {
+        List<String> names = new ArrayList<String>();
+        XMLEventReader reader = openReader(part, WORKBOOK_ENTRY);
+        try {
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement() && "sheet".equals(localName(event))) {
+                    names.add(attribute(event.asStartElement(), "name"));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return names;
+    }
+
+    /**
+     * 共享字符串数量
+     *
+     * @param part 分片
+     */
+    private static int countSharedStrings(ZipFile part) throws IOException, XMLStreamException {
+        if (part.getEntry(SHARED_STRINGS_ENTRY) == null) {
+            return 0;
+        }
+        int count = 0;
+        XMLEventReader reader = openReader(part, SHARED_STRINGS_ENTRY);
+        try {
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement() && "si".equals(localName(event))) {
+                    count++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    // ----------------------------------------工具函数----------------------------------------
+
+    /**
+     * 平移文本中的单元格引用,双引号内的字符串和单引号内的sheet页名称不变
+     *
+     * @param text   引用或公式
+     * @param offset 行平移量
+     */
+    static String shiftRefs(String text, int offset) {
+        if (text == null || offset == 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        int start = 0;
+        char quote = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : 0;
+            if (quote != 0) {
+                if (c == quote || c == 0) {
+                    sb.append(text, start, Math.min(i + 1, text.length()));
+                    start = i + 1;
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'' || c == 0) {
+                Matcher m = CELL_REF.matcher(text.substring(start, i));
+                StringBuffer shifted = new StringBuffer();
+                while (m.find()) {
+                    m.appendReplacement(shifted, Matcher.quoteReplacement(m.group(1) + (Long.parseLong(m.group(2)) + offset)));
+                }
+                m.appendTail(shifted);
+                sb.append(shifted);
+                start = i;
+                quote = c;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isFormula(String element) {
+        return "f".equals(element) || "formula".equals(element) || "formula1".equals(element) || "formula2".equals(element);
+    }
+
+    private static XMLEventReader openReader(ZipFile part, String entry) throws IOException, XMLStreamException {
+        ZipEntry zipEntry = part.getEntry(entry);
+        if (zipEntry == null) {
+            throw new IllegalStateException("分片缺少" + entry + ":" + part.getName());
+        }
+        return INPUT_FACTORY.createXMLEventReader(new BufferedInputStream(part.getInputStream(zipEntry)));
+    }
+
+    private static void copyEntry(ZipFile part, ZipEntry entry, OutputStream os) throws IOException {
+        InputStream is = part.getInputStream(entry);
+        try {
+            IOUtils.copy(is, os);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * 关闭XML输出时不关闭ZIP输出
+     *
+     * @param os 输出流
+     */
+    private static OutputStream nonClosing(OutputStream os) {
+        return new FilterOutputStream(os) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    private static String localName(XMLEvent event) {
+        return event.asStartElement().getName().getLocalPart();
+    }
+
+    private static String attribute(StartElement element, String name) {
+        Attribute attribute = element.getAttributeByName(new QName(name));
+        return attribute != null ? attribute.getValue() : null;
+    }
+
+    private static QName relationshipIdName(StartElement element) {
+        Iterator<?> it = element.getAttributes();
+        while (it.hasNext()) {
+            Attribute attribute = (Attribute) it.next();
+            if ("id".equals(attribute.getName().getLocalPart()) && !attribute.getName().getNamespaceURI().isEmpty()) {
+                return attribute.getName();
+            }
+        }
+        throw new IllegalStateException("工作簿格式错误:sheet元素缺少关系ID");
+    }
+
+    private static StartElement shiftAttribute(StartElement element, String name, int offset) {
+        String value = attribute(element, name);
+        return value == null || offset == 0 ? element : replaceAttribute(element, name, shiftRefs(value, offset));
+    }
+
+    /**
+     * 替换属性值
+     *
+     * @param element 元素
+     * @param name    属性名
+     * @param value   新值,为null则删除属性
+     */
+    private static StartElement replaceAttribute(StartElement element, String name, String value) {
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        Iterator<?> it = element.getAttributes();
+        while (it.hasNext()) {
+            Attribute attribute = (Attribute) it.next();
+            if (!name.equals(attribute.getName().getLocalPart()) || !attribute.getName().getNamespaceURI().isEmpty()) {
+                attributes.add(attribute);
+            } else if (value != null) {
+                attributes.add(EVENT_FACTORY.createAttribute(name, value));
+            }
+        }
+        QName qName = element.getName();
+        return EVENT_FACTORY.createStartElement(qName.getPrefix(), qName.getNamespaceURI(), qName.getLocalPart(),
+                attributes.iterator(), element.getNamespaces());
+    }
+
+}
@@ -0,0 +1,644 @@
+package com.demo.video.util;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 行数据容器
+ * <br>保存createRow写入的单元格数据及行高,合并计算时按顺序读取
+ * <br>内存中的行数超过阈值时,将内存中的行序列化到临时文件(值按类型标记、样式只记录索引、跨度变长编码),
+ * 读取时通过内存映射按顺序回放,避免导出前的数据与POI对象争用堆内存
+ * <br>String、Double、Integer、Long、BigDecimal、下拉选项完整写入文件,其它类型只在内存中保留对象引用
+ * <br>列式数据表按列写入原始数值,不拆分为单元格
+ * <br>String值在同一次导出的字符串表中去重,重复的文本只保留一个对象,写入文件时只写入字符串表中的序号
+ */
+class RowBuffer {
+
+    /**
+     * 值类型标记
+     */
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DECIMAL = 5;
+    private static final byte TYPE_OPTIONS = 6;
+    private static final byte TYPE_REF = 7;
+    private static final byte TYPE_STRING_REF = 8;
+
+    /**
+     * 内存中保留的最大行数:小于等于0则不写入文件
+     */
+    private int spillThreshold;
+
+    /**
+     * 内存中的行(位于文件中的行之后)
+     */
+    private List<Object[][]> rows = new ArrayList<Object[][]>();
+
+    /**
+     * 内存中的行高
+     */
+    private float[] heights = new float[16];
+
+    /**
+     * 文件中的行数
+     */
+    private int spilledRows = 0;
+
+    /**
+     * 临时文件
+     */
+    private File spillFile;
+
+    /**
+     * 临时文件输出流
+     */
+    private DataOutputStream spillOs;
+
+    /**
+     * 无法写入文件的值
+     */
+    private List<Object> refs = new ArrayList<Object>();
+
+    /**
+     * 字符串表:同一次导出的所有sheet共用
+     */
+    private final StringTable strings;
+
+    /**
+     * 行数据容器构造
+     *
+     * @param spillThreshold 内存中保留的最大行数,小于等于0则不写入文件
+     * @param strings        字符串表
+     */
+    RowBuffer(int spillThreshold, StringTable strings) {
+        this.spillThreshold = spillThreshold;
+        this.strings = strings;
+    }
+
+    /**
+     * 设置内存中保留的最大行数
+     *
+     * @param spillThreshold 小于等于0则不写入文件
+     */
+    void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * 添加行
+     *
+     * @param columns 单元格数据
+     * @param height  行高
+     */
+    void add(Object[][] columns, float height) {
+        if (rows.size() == heights.length) {
+            heights = Arrays.copyOf(heights, heights.length * 2);
+        }
+        heights[rows.size()] = height;
+        //文本去重(数据表的列由调用方持有,不替换)
+        if (ColumnTable.fromRow(columns) == null) {
+            for (Object[] column : columns) {
+                if (column[0] instanceof String) {
+                    column[0] = strings.intern((String) column[0]);
+                }
+            }
+        }
+        rows.add(columns);
+        if (spillThreshold > 0 && rows.size() > spillThreshold) {
+            spill();
+        }
+    }
+
+    /**
+     * 总行数
+     */
+    int size() {
+        return spilledRows + rows.size();
+    }
+
+    /**
+     * 是否已写入文件
+     */
+    boolean isSpilled() {
+        return spilledRows > 0;
+    }
+
+    /**
+     * 创建顺序读取游标
+     *
+     * @param workbook 工作簿,用于按索引还原样式
+     */
+    Cursor cursor(Workbook workbook) {
+        return new Cursor(workbook);
+    }
+
+    /**
+     * 删除临时文件
+     */
+    void close() {
+        closeSpillOs();
+        if (spillFile != null) {
+            //仍被映射时可能无法立即删除
+            if (!spillFile.delete()) {
+                spillFile.deleteOnExit();
+            }
+            spillFile = null;
+        }
+        rows.clear();
+        refs.clear();
+        spilledRows = 0;
+    }
+
+    /**
+     * 将内存中的行写入临时文件
+     */
+    private void spill() {
+        try {
+            if (spillOs == null) {
+                spillFile = File.createTempFile("export", ".rows");
+                spillOs = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile), 1 << 16));
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                Object[][] columns = rows.get(i);
+                spillOs.writeFloat(heights[i]);
+                //列数+1,0表示数据表
+                ColumnTable table = ColumnTable.fromRow(columns);
+                if (table != null) {
+                    writeVarInt(0);
+                    writeTable(table);
+                    continue;
+                }
+                writeVarInt(columns.length + 1);
+                for (Object[] column : columns) {
+                    writeValue(column[0]);
+                    writeVarInt((Integer) column[1]);
+                    writeVarInt((Integer) column[2]);
+                    writeVarInt(column[3] == null ? 0 : (((CellStyle) column[3]).getIndex() & 0xFFFF) + 1);
+                }
+            }
+            spilledRows += rows.size();
+            rows.clear();
+        } catch (IOException e) {
+            throw new IllegalStateException("写入行数据临时文件失败", e);
+        }
+    }
+
+    /**
+     * 写入值
+     *
+     * @param val
+     */
+    private void writeValue(Object val) throws IOException {
+        if (val == null) {
+            spillOs.writeByte(TYPE_NULL);
+        } else if (val instanceof String) {
+            int id = strings.id((String) val);
+            if (id >= 0) {
+                spillOs.writeByte(TYPE_STRING_REF);
+                writeVarInt(id);
+            } else {
+                spillOs.writeByte(TYPE_STRING);
+                writeString((String) val);
+            }
+        } else if (val instanceof Double) {
+            spillOs.writeByte(TYPE_DOUBLE);
+            spillOs.writeDouble((Double) val);
+        } else if (val instanceof Integer) {
+            spillOs.writeByte(TYPE_INTEGER);
+            spillOs.writeInt((Integer) val);
+        } else if (val instanceof Long) {
+            spillOs.writeByte(TYPE_LONG);
+            spillOs.writeLong((Long) val);
+        } else if (val instanceof BigDecimal) {
+            spillOs.writeByte(TYPE_DECIMAL);
+            writeString(val.toString());
+        } else if (val instanceof String[][] && ((String[][]) val).length == 2) {
+            spillOs.writeByte(TYPE_OPTIONS);
+            for (String[] options : (String[][]) val) {
+                writeVarInt(options == null ? 0 : options.length + 1);
+                if (options != null) {
+                    for (String option : options) {
+                        writeNullableString(option);
+                    }
+                }
+            }
+        } else {
+            spillOs.writeByte(TYPE_REF);
+            writeVarInt(refs.size());
+            refs.add(val);
+        }
+    }
+
+    /**
+     * 写入数据表:行数、列数,每列的类型、样式索引、全部值
+     *
+     * @param table 数据表
+     */
+    private void writeTable(ColumnTable table) throws IOException {
+        int rowCount = table.getRowCount();
+        writeVarInt(rowCount);
+        writeVarInt(table.getColumnCount());
+        for (int j = 0; j < table.getColumnCount(); j++) {
+            byte type = table.getType(j);
+            CellStyle cellStyle = table.getStyle(j);
+            spillOs.writeByte(type);
+            writeVarInt(cellStyle == null ? 0 : (cellStyle.getIndex() & 0xFFFF) + 1);
+            Object column = table.getColumn(j);
+            for (int r = 0; r < rowCount; r++) {
+                switch (type) {
+                    case ColumnTable.TYPE_DOUBLE:
+                        spillOs.writeDouble(((double[]) column)[r]);
+                        break;
+                    case ColumnTable.TYPE_LONG:
+                        spillOs.writeLong(((long[]) column)[r]);
+                        break;
+                    case ColumnTable.TYPE_INT:
+                        spillOs.writeInt(((int[]) column)[r]);
+                        break;
+                    default:
+                        writeTableString(((String[]) column)[r]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入数据表文本:0为null,1为文本,2为字符串表序号
+     */
+    private void writeTableString(String str) throws IOException {
+        int id = str == null ? -1 : strings.id(strings.intern(str));
+        if (id >= 0) {
+            spillOs.writeByte(2);
+            writeVarInt(id);
+        } else {
+            writeNullableString(str);
+        }
+    }
+
+    private void writeNullableString(String str) throws IOException {
+        spillOs.writeBoolean(str != null);
+        if (str != null) {
+            writeString(str);
+        }
+    }
+
+    private void writeString(String str) throws IOException {
+        byte[] bytes = str.getBytes("UTF-8");
+        writeVarInt(bytes.length);
+        spillOs.write(bytes);
+    }
+
+    /**
+     * 写入非负整数(变长编码,每字节7位)
+     */
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            spillOs.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        spillOs.writeByte(value);
+    }
+
+    private void closeSpillOs() {
+        if (spillOs != null) {
+            try {
+                spillOs.close();
+            } catch (IOException e) {
+                //临时文件,忽略
+            }
+            spillOs = null;
+        }
+    }
+
+    /**
+     * 顺序读取游标
+     * <br>先读取文件中的行,再读取内存中的行
+     */
+    class Cursor {
+
+        /**
+         * 内存映射分段大小
+         */
+        private static final long SEGMENT = 64L << 20;
+
+        private final Workbook workbook;
+
+        /**
+         * 已按索引还原的样式
+         */
+        private CellStyle[] styles = new CellStyle[0];
+
+        /**
+         * 下一行序号
+         */
+        private int index = 0;
+
+        /**
+         * 当前行高
+         */
+        private float height;
+
+        private RandomAccessFile file;
+
+        private FileChannel channel;
+
+        /**
+         * 当前映射分段及其在文件中的位置
+         */
+        private MappedByteBuffer buffer;
+        private long base;
+
+        Cursor(Workbook workbook) {
+            this.workbook = workbook;
+            if (spilledRows > 0) {
+                try {
+                    spillOs.flush();
+                    file = new RandomAccessFile(spillFile, "r");
+                    channel = file.getChannel();
+                    map(0);
+                } catch (IOException e) {
+                    close();
+                    throw new IllegalStateException("读取行数据临时文件失败", e);
+                }
+            }
+        }
+
+        /**
+         * 读取下一行
+         *
+         * @return 单元格数据,没有更多行时返回null
+         */
+        Object[][] next() {
+            if (index >= size()) {
+                close();
+                return null;
+            }
+            if (index >= spilledRows) {
+                int i = index++ - spilledRows;
+                height = heights[i];
+                return rows.get(i);
+            }
+            index++;
+            try {
+                height = Float.intBitsToFloat(readInt());
+                int length = readVarInt() - 1;
+                if (length < 0) {
+                    return readTable().toRow();
+                }
+                Object[][] columns = new Object[length][];
+                for (int j = 0; j < columns.length; j++) {
+                    Object val = readValue();
+                    int colSpan = readVarInt();
+                    int rowSpan = readVarInt();
+                    columns[j] = new Object[]{val, colSpan, rowSpan, style(readVarInt() - 1)};
+                }
+                return columns;
+            } catch (IOException e) {
+                close();
+                throw new IllegalStateException("读取行数据临时文件失败", e);
+            }
+        }
+
+        /**
+         * 当前行高
+         */
+        float height() {
+            return height;
+        }
+
+        /**
+         * 关闭文件
+         */
+        void close() {
+            buffer = null;
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    //只读文件,忽略
+                }
+                file = null;
+                channel = null;
+            }
+        }
+
+        private CellStyle style(int styleIndex) {
+            if (styleIndex < 0) {
+                return null;
+            }
+            if (styleIndex >= styles.length) {
+                styles = Arrays.copyOf(styles, Math.max(styleIndex + 1, workbook.getNumCellStyles()));
+            }
+            if (styles[styleIndex] == null) {
+                styles[styleIndex] = workbook.getCellStyleAt((short) styleIndex);
+            }
+            return styles[styleIndex];
+        }
+
+        private Object readValue() throws IOException {
+            byte type = readByte();
+            switch (type) {
+                case TYPE_NULL:
+                    return null;
+                case TYPE_STRING:
+                    return readString();
+                case TYPE_STRING_REF:
+                    return strings.get(readVarInt());
+                case TYPE_DOUBLE:
+                    return Double.longBitsToDouble(readLong());
+                case TYPE_INTEGER:
+                    return readInt();
+                case TYPE_LONG:
+                    return readLong();
+                case TYPE_DECIMAL:
+                    return new BigDecimal(readString());
+                case TYPE_OPTIONS:
+                    String[][] options = new String[2][];
+                    for (int k = 0; k < 2; k++) {
+                        int length = readVarInt() - 1;
+                        if (length >= 0) {
+                            options[k] = new String[length];
+                            for (int m = 0; m < length; m++) {
+                                options[k][m] = readByte() != 0 ? readString() : null;
+                            }
+                        }
+                    }
+                    return options;
+                default:
+                    return refs.get(readVarInt());
+            }
+        }
+
+        private ColumnTable readTable() throws IOException {
+            int rowCount = readVarInt();
+            int columnCount = readVarInt();
+            ColumnTable table = new ColumnTable(rowCount);
+            for (int j = 0; j < columnCount; j++) {
+                byte type = readByte();
+                CellStyle cellStyle = style(readVarInt() - 1);
+                switch (type) {
+                    case ColumnTable.TYPE_DOUBLE:
+                        double[] doubles = new double[rowCount];
+                        for (int r = 0; r < rowCount; r++) {
+                            doubles[r] = Double.longBitsToDouble(readLong());
+                        }
+                        table.addColumn(doubles, cellStyle);
+                        break;
+                    case ColumnTable.TYPE_LONG:
+                        long[] longs = new long[rowCount];
+                        for (int r = 0; r < rowCount; r++) {
+                            longs[r] = readLong();
+                        }
+                        table.addColumn(longs, cellStyle);
+                        break;
+                    case ColumnTable.TYPE_INT:
+                        int[] ints = new int[rowCount];
+                        for (int r = 0; r < rowCount; r++) {
+                            ints[r] = readInt();
+                        }
+                        table.addColumn(ints, cellStyle);
+                        break;
+                    default:
+                        String[] strings = new String[rowCount];
+                        for (int r = 0; r < rowCount; r++) {
+                            byte flag = readByte();
+                            strings[r] = flag == 0 ? null : flag == 1 ? readString() : RowBuffer.this.strings.get(readVarInt());
+                        }
+                        table.addColumn(strings, cellStyle);
+                }
+            }
+            return table;
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[readVarInt()];
+            int off = 0;
+            while (off < bytes.length) {
+                ensureRemaining();
+                int n = Math.min(buffer.remaining(), bytes.length - off);
+                buffer.get(bytes, off, n);
+                off += n;
+            }
+            return new String(bytes, "UTF-8");
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private int readInt() throws IOException {
+            if (buffer.remaining() >= 4) {
+                return buffer.getInt();
+            }
+            int value = 0;
+            for (int k = 0; k < 4; k++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        private long readLong() throws IOException {
+            if (buffer.remaining() >= 8) {
+                return buffer.getLong();
+            }
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        private byte readByte() throws IOException {
+            ensureRemaining();
+            return buffer.get();
+        }
+
+        /**
+         * 当前分段已读完时映射下一分段
+         */
+        private void ensureRemaining() throws IOException {
+            if (!buffer.hasRemaining()) {
+                map(base + buffer.limit());
+            }
+        }
+
+        private void map(long position) throws IOException {
+            base = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT, channel.size() - position));
+        }
+    }
+
+    /**
+     * 字符串表
+     * <br>文本去重并分配序号,只收录较短的文本,收录数量达到上限后不再增加(已收录的文本仍去重)
+     */
+    static class StringTable {
+
+        /**
+         * 最多收录的文本数、收录的最大长度
+         */
+        private static final int MAX_SIZE = 1 << 16;
+        private static final int MAX_LENGTH = 128;
+
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+        private final List<String> values = new ArrayList<String>();
+
+        /**
+         * 未收录的文本次数(过长或已达上限)
+         */
+        private long skipped = 0;
+
+        /**
+         * 去重:返回已收录的相同文本,未收录则尝试收录
+         */
+        String intern(String str) {
+            Integer id = ids.get(str);
+            if (id != null) {
+                return values.get(id);
+            }
+            if (str.length() > MAX_LENGTH || values.size() >= MAX_SIZE) {
+                skipped++;
+                return str;
+            }
+            ids.put(str, values.size());
+            values.add(str);
+            return str;
+        }
+
+        /**
+         * 序号,未收录返回-1
+         */
+        int id(String str) {
+            Integer id = ids.get(str);
+            return id != null ? id : -1;
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+
+        /**
+         * 不同文本数的估计:已收录数+未收录次数
+         */
+        long distinctEstimate() {
+            return values.size() + skipped;
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.demo.video.util;
+
+/**
+ * 行数据转换
+ * <br>将一条源数据转换为createRow使用的单元格数据,流水线模式下由多个线程并发调用,实现必须是线程安全的
+ * <br>转换中可以使用SimpleExport的set、generateOptions方法,不能调用createRow等写入方法
+ */
+public interface RowConverter<T> {
+
+    /**
+     * 转换一行数据
+     *
+     * @param record 源数据
+     * @return 单元格数据,结构与createRow的columns参数相同
+     */
+    Object[][] convert(T record);
+
+}
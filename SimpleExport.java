@@ -6,16 +6,20 @@ import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.CellRangeAddressList;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Excel简单导出
@@ -50,7 +54,7 @@ public class SimpleExport {
 
         ExcelVersionEnum(String suffix, boolean isExcel2003) {
             this.suffix = suffix;
-            this.isExcel2003 = true;
+            this.isExcel2003 = isExcel2003;
         }
 
         public String getSuffix() {
@@ -82,6 +86,108 @@ public class SimpleExport {
         }
     }
 
+    /**
+     * 超出内存预算时的处理方式
+     */
+    public enum BudgetPolicyEnum {
+        /**
+         * 切换为流式导出(仅Excel2007),流式导出仍超出预算则报错
+         */
+        STREAMING,
+        /**
+         * 直接报错
+         */
+        FAIL
+    }
+
+    /**
+     * Excel2007流式导出的文本存储方式
+     * <br>非流式导出的Excel2007、Excel2003始终使用共享字符串表
+     */
+    public enum SharedStringsEnum {
+        /**
+         * 共享字符串表:重复文本只写入一次,文件更小,不同文本越多占用内存越多;
+         * 不同文本数超过上限时报错(流式写出时每个单元格的存储方式不能单独选择,无法中途改为内联)
+         */
+        SHARED,
+        /**
+         * 内联文本:每个单元格写入完整文本,内存占用固定(默认)
+         */
+        INLINE,
+        /**
+         * 按已添加行中不同文本数量选择:不超过上限使用共享字符串表,否则内联
+         * <br>切换为流式导出时还没有添加行,则在第一次合并计算时选择
+         */
+        HYBRID
+    }
+
+    /**
+     * 分组汇总方式
+     */
+    public enum AggregateEnum {
+        SUM(9), COUNT(2), MIN(5), MAX(4), AVG(1);
+        /**
+         * SUBTOTAL函数编号
+         */
+        private int functionNum;
+
+        AggregateEnum(int functionNum) {
+            this.functionNum = functionNum;
+        }
+
+        public int getFunctionNum() {
+            return functionNum;
+        }
+    }
+
+    /**
+     * 内存预估:HSSF单元格（字节）
+     */
+    private static final int HSSF_CELL_BYTES = 150;
+
+    /**
+     * 内存预估:XSSF单元格（字节）
+     */
+    private static final int XSSF_CELL_BYTES = 900;
+
+    /**
+     * 内存预估:流式导出窗口内单元格（字节）
+     */
+    private static final int SXSSF_CELL_BYTES = 300;
+
+    /**
+     * 内存预估:合并区域（字节）
+     */
+    private static final int MERGED_REGION_BYTES = 400;
+
+    /**
+     * 合并计算时检查取消的间隔行数
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 64;
+
+    /**
+     * 测试模式保留的最近放置事件数
+     */
+    private static final int DIAGNOSTICS_CAPACITY = 1024;
+
+    /**
+     * 分段并行合并计算的最小行数、分段最小行数
+     */
+    private static final int PARALLEL_LAYOUT_MIN_ROWS = 10000;
+    private static final int PARALLEL_LAYOUT_MIN_BAND = 1024;
+
+    /**
+     * 线程内复用的占用记录表及其最大单元格数(超过则不复用,避免线程长期占用大块内存)
+     * <br>每个线程最多保留约128KB(32768个单元格),200个线程约25MB
+     */
+    private static final int RECORD_SCRATCH_MAX_CELLS = 1 << 15;
+    private static final ThreadLocal<int[][]> RECORD_SCRATCH = new ThreadLocal<int[][]>();
+
+    /**
+     * 写出时回调进度的间隔字节数
+     */
+    private static final int PROGRESS_BYTES = 1 << 20;
+
     /**
      * Excel版本
      */
@@ -132,11 +238,6 @@ public class SimpleExport {
      */
     private float rowHeight = 35;
 
-    /**
-     * 表格行高集合
-     */
-    private List<Float> rowsHeight;
-
     /**
      * 占用记录表
      */
@@ -150,14 +251,191 @@ public class SimpleExport {
      * vals[?][?][1]-X轴跨度（列）<br>
      * vals[?][?][2]-Y轴跨度（行）<br>
      * vals[?][?][3]-样式<br>
+     * 同时保存各行行高,超过阈值的行写入临时文件
+     */
+    private RowBuffer vals;
+
+    /**
+     * 数据容器内存中保留的最大行数:小于等于0则不写入临时文件（默认）
+     */
+    private int spillThreshold = 0;
+
+    /**
+     * 当前sheet待生成的条件格式
      */
-    private List<Object[][]> vals;
+    private List<ConditionalRule> conditionalRules;
+
+    /**
+     * 本次合并计算放置的数据表:{起始行,行数}(sheet行号),用于换算条件格式的行号
+     */
+    private List<int[]> placedTables = new ArrayList<int[]>();
+
+    /**
+     * 本次合并计算写入的最后一行(sheet行号)
+     */
+    private int layoutLastRow = -1;
+
+    /**
+     * 合并计算并行度:大于1时大表格分段并行计算（默认1,顺序计算）
+     */
+    private int layoutParallelism = 1;
+
+    /**
+     * 是否复用线程内的占用记录表(由ExportRenderer启用)
+     */
+    private boolean recordScratch = false;
+
+    /**
+     * 进度监听（默认不启用）
+     */
+    private ExportProgressListener progressListener;
+
+    /**
+     * 合并计算时回调进度的间隔行数
+     */
+    private int progressInterval = 1000;
+
+    /**
+     * 当前阶段开始时间（纳秒）
+     */
+    private long progressStart;
+
+    /**
+     * 当前sheet的总行数(数据表按其行数计算),由calculateTableSize统计
+     */
+    private long totalRows;
+
+    /**
+     * 工作簿中已写入的图片:内容摘要-图片索引
+     */
+    private Map<String, Integer> pictureIndexes = new HashMap<String, Integer>();
+
+    /**
+     * 是否把=开头的文本作为公式写入（默认否）
+     */
+    private boolean formulaPrefix = false;
+
+    /**
+     * 生成前是否统一计算公式（默认否）
+     */
+    private boolean evaluateFormulas = false;
+
+    /**
+     * 是否写入了没有缓存值的公式
+     */
+    private boolean hasUncachedFormulas = false;
+
+    /**
+     * 延迟加载值的缓存:为null则不缓存（默认）
+     */
+    private Map<DeferredValue, Object> valueCache;
+
+    /**
+     * 生成摘要时已计算的延迟值(按对象标识),写入单元格时直接使用,不重复计算
+     */
+    private Map<Object, Object> digestedValues;
 
     /**
      * 测试模式（默认关闭）
      */
     private boolean isTest = false;
 
+    /**
+     * 测试模式下的合并计算诊断
+     */
+    private LayoutDiagnostics diagnostics;
+
+    /**
+     * 导出缓存（默认不启用）
+     */
+    private ExportCache exportCache;
+
+    /**
+     * 调用方指定的缓存键:为空则按表格内容摘要生成
+     */
+    private String cacheKey;
+
+    /**
+     * 表格内容摘要:每次合并计算时累加
+     */
+    private MessageDigest tableDigest;
+
+    /**
+     * 是否已由缓存输出
+     */
+    private boolean servedFromCache = false;
+
+    /**
+     * 内存预算（字节）:小于等于0则不限制
+     */
+    private long memoryBudget = 0;
+
+    /**
+     * 超出内存预算时的处理方式
+     */
+    private BudgetPolicyEnum budgetPolicy = BudgetPolicyEnum.STREAMING;
+
+    /**
+     * 已完成合并计算的sheet预计占用内存（字节）
+     */
+    private long usedMemory = 0;
+
+    /**
+     * 是否已有sheet完成合并计算
+     */
+    private boolean isCalculated = false;
+
+    /**
+     * 流式导出内存中保留的行数
+     */
+    private int streamingWindow = 100;
+
+    /**
+     * 流式导出的文本存储方式及混合方式的不同文本数上限
+     */
+    private SharedStringsEnum sharedStrings = SharedStringsEnum.INLINE;
+    private int sharedStringsLimit = 10000;
+
+    /**
+     * 共享字符串表的不同文本数上限,超过则报错
+     */
+    private int sharedStringsCap = 1 << 20;
+
+    /**
+     * 流式导出使用的共享字符串表,内联时为null
+     */
+    private SharedStringsTable sharedStringsTable;
+
+    /**
+     * 已切换为流式导出,等待第一次合并计算时选择文本存储方式(混合方式切换时还没有文本)
+     */
+    private boolean isStreamingPending = false;
+
+    /**
+     * 字符串表:本次导出的文本去重
+     */
+    private RowBuffer.StringTable strings = new RowBuffer.StringTable();
+
+    /**
+     * 小计行样式:为空则使用行样式
+     */
+    private CellStyle subtotalStyle;
+
+    /**
+     * 小计行标题
+     */
+    private String subtotalLabel = "小计";
+
+    /**
+     * 合计行标题
+     */
+    private String totalLabel = "合计";
+
+    /**
+     * 取消标记
+     */
+    private ExportCancelToken cancelToken = new ExportCancelToken();
+
     // ----------------------------------------基本设置----------------------------------------
 
     /**
@@ -231,6 +509,22 @@ public class SimpleExport {
         init(os, excelVersionEnum, sheetName);
     }
 
+    /**
+     * 基于已有工作簿的导出构造(追加模式)
+     * <br>不创建默认样式,避免每次追加都在样式表中新增样式
+     *
+     * @param workbook  Excel2007工作簿
+     * @param os        输出流
+     * @param sheetName 已有sheet页名称
+     */
+    SimpleExport(Workbook workbook, OutputStream os, String sheetName) {
+        this.excelVersionEnum = ExcelVersionEnum.EXCEL2007;
+        this.workbook = workbook;
+        createVals();
+        this.sheet = workbook.getSheet(sheetName);
+        this.os = new CancelOutputStream(os);
+    }
+
     /**
      * 初始化
      *
@@ -243,7 +537,8 @@ public class SimpleExport {
         workbook = this.excelVersionEnum.createWorkbook();
         //sheet名称不存在，则不创建sheet
         sheet = sheetName != NOT_CREATE_SHEET ? createSheet(sheetName) : null;
-        this.os = os;
+        //写出时检查取消,并识别连接断开
+        this.os = new CancelOutputStream(os);
 
         //创建默认样式
         mainTitleStyle = createMainTitleStyle();
@@ -274,12 +569,15 @@ public class SimpleExport {
      * Create time: 2017年4月5日下午2:16:47
      */
     private void createVals() {
-        //数据容器创建
-        this.vals = new ArrayList<Object[][]>();
+        //数据容器创建(含行高),删除上一个sheet的临时文件
+        if (this.vals != null) {
+            this.vals.close();
+        }
+        this.vals = new RowBuffer(spillThreshold, strings);
         //列宽集合创建
         this.columnsWidth = new HashMap<Integer, Integer>();
-        //行高集合创建
-        this.rowsHeight = new ArrayList<Float>();
+        //条件格式集合创建
+        this.conditionalRules = new ArrayList<ConditionalRule>();
     }
 
     /**
@@ -582,6 +880,160 @@ public class SimpleExport {
         }
     }
 
+    /**
+     * 添加隔行填充条件格式(斑马纹)
+     * <br>整个区域只生成一条条件格式规则,代替逐个单元格设置交替样式
+     * <br>坐标为表格内坐标,合并计算时加上起始位置
+     *
+     * @param firstRow  起始行
+     * @param lastRow   结束行,-1表示到表格末尾
+     * @param firstCol  起始列
+     * @param lastCol   结束列
+     * @param fillColor 填充颜色,例:IndexedColors.GREY_25_PERCENT.getIndex()
+     */
+    public void addZebraFormatting(int firstRow, int lastRow, int firstCol, int lastCol, short fillColor) {
+        conditionalRules.add(new ConditionalRule(ConditionalRule.ZEBRA, firstRow, lastRow, firstCol, lastCol,
+                (byte) 0, null, fillColor));
+    }
+
+    /**
+     * 添加数值比较条件格式,满足条件时改变字体颜色
+     * <br>例:负数标红 addThresholdFormatting(2, -1, 3, 5, ComparisonOperator.LT, "0", IndexedColors.RED.getIndex())
+     *
+     * @param firstRow   起始行
+     * @param lastRow    结束行,-1表示到表格末尾
+     * @param firstCol   起始列
+     * @param lastCol    结束列
+     * @param operator   比较方式,例:ComparisonOperator.LT
+     * @param threshold  比较值(公式)
+     * @param fontColor  字体颜色
+     */
+    public void addThresholdFormatting(int firstRow, int lastRow, int firstCol, int lastCol, byte operator,
+                                       String threshold, short fontColor) {
+        conditionalRules.add(new ConditionalRule(ConditionalRule.THRESHOLD, firstRow, lastRow, firstCol, lastCol,
+                operator, threshold, fontColor));
+    }
+
+    /**
+     * 添加文本包含条件格式,单元格包含指定文本(不区分大小写)时改变字体颜色
+     *
+     * @param firstRow  起始行
+     * @param lastRow   结束行,-1表示到表格末尾
+     * @param firstCol  起始列
+     * @param lastCol   结束列
+     * @param text      包含的文本
+     * @param fontColor 字体颜色
+     */
+    public void addTextFormatting(int firstRow, int lastRow, int firstCol, int lastCol, String text, short fontColor) {
+        conditionalRules.add(new ConditionalRule(ConditionalRule.TEXT, firstRow, lastRow, firstCol, lastCol,
+                (byte) 0, text, fontColor));
+    }
+
+    /**
+     * 生成条件格式(合并计算之后)
+     * <br>规则的行号为表格内坐标(不含数据表的行),按放置结果加上之前数据表的行数;-1表示到实际写入的最后一行
+     *
+     * @param startPoint 起始位置
+     */
+    private void executeConditionalFormatting(int[] startPoint) {
+        if (conditionalRules.isEmpty()) {
+            return;
+        }
+        SheetConditionalFormatting scf = sheet.getSheetConditionalFormatting();
+        for (ConditionalRule rule : conditionalRules) {
+            //起始行包含在该位置放置的数据表,结束行在该位置放置的数据表之后
+            int firstRow = toSheetRow(startPoint, rule.firstRow, false);
+            int lastRow = rule.lastRow < 0 ? layoutLastRow : toSheetRow(startPoint, rule.lastRow, true);
+            if (lastRow < firstRow) {
+                continue;
+            }
+            int firstCol = startPoint[0] + rule.firstCol;
+            int lastCol = startPoint[0] + rule.lastCol;
+            ConditionalFormattingRule cfRule;
+            if (rule.type == ConditionalRule.ZEBRA) {
+                //从区域第二行起隔行填充
+                cfRule = scf.createConditionalFormattingRule("MOD(ROW()-" + (firstRow + 1) + ",2)=1");
+                PatternFormatting pattern = cfRule.createPatternFormatting();
+                pattern.setFillBackgroundColor(rule.color);
+                pattern.setFillForegroundColor(rule.color);
+                pattern.setFillPattern(PatternFormatting.SOLID_FOREGROUND);
+            } else {
+                if (rule.type == ConditionalRule.THRESHOLD) {
+                    cfRule = scf.createConditionalFormattingRule(rule.operator, rule.value);
+                } else {
+                    //公式中的单元格地址相对于区域左上角
+                    String cellRef = new CellReference(firstRow, firstCol, false, false).formatAsString();
+                    cfRule = scf.createConditionalFormattingRule("ISNUMBER(SEARCH(\"" + rule.value.replace("\"", "\"\"")
+                            + "\"," + cellRef + "))");
+                }
+                cfRule.createFontFormatting().setFontColorIndex(rule.color);
+            }
+            scf.addConditionalFormatting(new CellRangeAddress[]{new CellRangeAddress(firstRow, lastRow, firstCol, lastCol)}, cfRule);
+        }
+    }
+
+    /**
+     * 表格内行号换算为sheet行号:加上之前放置的数据表的行数
+     *
+     * @param startPoint 起始位置
+     * @param row        表格内行号(不含数据表的行)
+     * @param inclusive  是否包含在该行位置放置的数据表
+     */
+    private int toSheetRow(int[] startPoint, int row, boolean inclusive) {
+        int shift = 0;
+        for (int[] table : placedTables) {
+            //数据表所在的表格内行号
+            int tableRow = table[0] - startPoint[1] - shift;
+            if (tableRow > row || (tableRow == row && !inclusive)) {
+                break;
+            }
+            shift += table[1];
+        }
+        return startPoint[1] + row + shift;
+    }
+
+    /**
+     * 条件格式定义
+     */
+    private static class ConditionalRule {
+
+        static final int ZEBRA = 0;
+        static final int THRESHOLD = 1;
+        static final int TEXT = 2;
+
+        private final int type;
+        private final int firstRow;
+        private final int lastRow;
+        private final int firstCol;
+        private final int lastCol;
+
+        /**
+         * 比较方式(数值比较)
+         */
+        private final byte operator;
+
+        /**
+         * 比较值(数值比较)或文本(文本包含)
+         */
+        private final String value;
+
+        /**
+         * 填充颜色(隔行填充)或字体颜色
+         */
+        private final short color;
+
+        ConditionalRule(int type, int firstRow, int lastRow, int firstCol, int lastCol, byte operator, String value, short color) {
+            this.type = type;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.firstCol = firstCol;
+            this.lastCol = lastCol;
+            this.operator = operator;
+            this.value = value;
+            this.color = color;
+        }
+    }
+
     /**
      * 获取默认主标题样式
      */
@@ -636,8 +1088,6 @@ public class SimpleExport {
      * @date 17-10-26下午4:59
      */
     public void createRow(CellStyle cellStyle, float rowHeight, Object[]... columns) {
-        //设置行高
-        rowsHeight.add(rowHeight);
         //设置样式
         for (int i = 0; i < columns.length; i++) {
             //set方法设置样式优先级高于createRow方法设置样式的优先级
@@ -646,7 +1096,7 @@ public class SimpleExport {
             }
         }
         //添加到数据集
-        this.vals.add(columns);
+        this.vals.add(columns, rowHeight);
     }
 
     /**
@@ -764,21 +1214,535 @@ public class SimpleExport {
     }
 
     /**
-     * 设置单元格内容
+     * 流水线方式创建多行
+     * <br>由读取线程按批次读取源数据,线程池并发转换,当前线程按原顺序写入,转换结果队列有上限
+     * <br>适用于数值日期格式化、样式选择等转换较重的导出
      *
-     * @param obj       数据对象:会自动识别数据对象类型,如果此对象为字符串数组则单元格为下拉框
-     * @param colSpan   列合并,最小值为1
-     * @param rowSpan   行合并,最小值为1
-     * @param cellStyle 单元格样式
-     * @author liuxu
-     * @date 17-10-27上午8:47
+     * @param cellStyle 行样式
+     * @param source    源数据,仅由读取线程访问
+     * @param converter 行数据转换,必须是线程安全的
+     * @param threads   转换线程数,小于等于1则在当前线程中转换
+     * @param batchSize 每批行数
+     */
+    public <T> void createRows(final CellStyle cellStyle, final Iterator<T> source, final RowConverter<T> converter,
+                               int threads, final int batchSize) {
+        if (threads <= 1) {
+            while (source.hasNext()) {
+                createRow(cellStyle, this.rowHeight, converter.convert(source.next()));
+            }
+            return;
+        }
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, newThreadFactory("export-convert"));
+        //转换结果队列:按提交顺序排列,队列满时读取线程等待
+        final BlockingQueue<Future<List<Object[][]>>> queue = new ArrayBlockingQueue<Future<List<Object[][]>>>(threads * 2);
+        Thread reader = newThreadFactory("export-source").newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (source.hasNext()) {
+                        final List<T> batch = new ArrayList<T>(batchSize);
+                        while (batch.size() < batchSize && source.hasNext()) {
+                            batch.add(source.next());
+                        }
+                        queue.put(pool.submit(new Callable<List<Object[][]>>() {
+                            @Override
+                            public List<Object[][]> call() {
+                                List<Object[][]> rows = new ArrayList<Object[][]>(batch.size());
+                                for (T record : batch) {
+                                    rows.add(converter.convert(record));
+                                }
+                                return rows;
+                            }
+                        }));
+                    }
+                    //结束标记
+                    queue.put(SimpleExport.<List<Object[][]>>completedFuture(null, null));
+                } catch (InterruptedException e) {
+                    //写入已中止
+                } catch (Throwable e) {
+                    //读取源数据失败,交给写入线程抛出;队列满时等待,中断表示写入已中止
+                    try {
+                        queue.put(SimpleExport.<List<Object[][]>>completedFuture(null, e));
+                    } catch (InterruptedException ie) {
+                        //写入已中止
+                    }
+                }
+            }
+        });
+        reader.start();
+        boolean isFinished = false;
+        try {
+            while (true) {
+                cancelToken.checkCancelled();
+                List<Object[][]> rows = queue.take().get();
+                if (rows == null) {
+                    break;
+                }
+                for (Object[][] columns : rows) {
+                    createRow(cellStyle, this.rowHeight, columns);
+                }
+            }
+            isFinished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExportCancelledException("导出线程被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (!isFinished) {
+                //中止读取及未完成的转换
+                reader.interrupt();
+                for (Future<List<Object[][]>> future : queue) {
+                    future.cancel(true);
+                }
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 流水线方式创建多行(默认内容样式,每批256行)
+     *
+     * @param source    源数据
+     * @param converter 行数据转换,必须是线程安全的
+     * @param threads   转换线程数
      */
-    public Object[] set(Object obj, int colSpan, int rowSpan, CellStyle cellStyle) {
-        return new Object[]{obj, colSpan - 1, rowSpan - 1, cellStyle};
+    public <T> void createRows(Iterator<T> source, RowConverter<T> converter, int threads) {
+        createRows(contentStyle, source, converter, threads, 256);
     }
 
     /**
-     * 设置单元格内容
+     * 分组创建多行,相邻行分组列的值相同时自动纵向合并
+     * <br>数据需按分组列排序,分组列按顺序逐级嵌套:后面的分组列只在前面的分组列都相同时合并
+     * <br>只缓存当前第一级分组的行,分组结束时生成带行合并的单元格数据,由合并计算统一处理合并区域
+     *
+     * @param cellStyle  行样式
+     * @param keyColumns 分组列序号,从0开始
+     * @param rows       行数据,每行为各列的值
+     */
+    public void createGroupedRows(CellStyle cellStyle, int[] keyColumns, Iterator<Object[]> rows) {
+        createGroupedRows(cellStyle, keyColumns, null, false, rows);
+    }
+
+    /**
+     * 分组创建多行,并在每个第一级分组后生成小计行,最后生成合计行
+     * <br>汇总值在写入行时累加,不需要预先遍历数据
+     *
+     * @param cellStyle  行样式
+     * @param keyColumns 分组列序号,从0开始,为空则只生成合计行
+     * @param aggregates 各列汇总方式,下标为列序号,不汇总的列为null
+     * @param useFormula true:小计、合计使用SUBTOTAL公式(同时写入计算结果) false:写入计算结果
+     * @param rows       行数据,每行为各列的值,需按分组列排序
+     */
+    public void createGroupedRows(CellStyle cellStyle, int[] keyColumns, AggregateEnum[] aggregates, boolean useFormula,
+                                  Iterator<Object[]> rows) {
+        //当前分组
+        List<Object[]> group = new ArrayList<Object[]>();
+        //分组及合计汇总
+        Aggregator groupAggregator = aggregates != null ? new Aggregator(aggregates.length) : null;
+        Aggregator totalAggregator = aggregates != null ? new Aggregator(aggregates.length) : null;
+        //数据起始行(数据容器中的位置)、列数
+        int firstRow = vals.size();
+        int rowLength = 0;
+        while (rows.hasNext()) {
+            Object[] row = rows.next();
+            //第一级分组变化,输出当前分组
+            if (!group.isEmpty() && (keyColumns.length == 0
+                    || !isEqual(group.get(0)[keyColumns[0]], row[keyColumns[0]]))) {
+                createGroup(cellStyle, keyColumns, aggregates, useFormula, groupAggregator, totalAggregator, group);
+                group.clear();
+            }
+            group.add(row);
+            rowLength = Math.max(rowLength, row.length);
+            if (groupAggregator != null) {
+                groupAggregator.add(row);
+            }
+        }
+        createGroup(cellStyle, keyColumns, aggregates, useFormula, groupAggregator, totalAggregator, group);
+        //合计行
+        if (totalAggregator != null && vals.size() > firstRow) {
+            createSubtotalRow(cellStyle, keyColumns, aggregates, useFormula, totalAggregator, totalLabel,
+                    firstRow, vals.size() - 1, rowLength);
+        }
+    }
+
+    /**
+     * 分组创建多行(默认内容样式)
+     *
+     * @param keyColumns 分组列序号,从0开始
+     * @param rows       行数据,需按分组列排序
+     */
+    public void createGroupedRows(int[] keyColumns, List<Object[]> rows) {
+        createGroupedRows(contentStyle, keyColumns, rows.iterator());
+    }
+
+    /**
+     * 生成一个第一级分组的行
+     *
+     * @param cellStyle  行样式
+     * @param keyColumns 分组列序号
+     * @param group      分组内的行
+     */
+    private void createGroup(CellStyle cellStyle, int[] keyColumns, AggregateEnum[] aggregates, boolean useFormula,
+                             Aggregator groupAggregator, Aggregator totalAggregator, List<Object[]> group) {
+        int size = group.size();
+        if (size == 0) {
+            return;
+        }
+        int firstRow = vals.size();
+        int rowLength = 0;
+        //spans[k][i]:第i行起第k级分组的连续行数
+        int[][] spans = new int[keyColumns.length][size];
+        for (int k = 0; k < keyColumns.length; k++) {
+            spans[k][size - 1] = 1;
+            for (int i = size - 2; i >= 0; i--) {
+                spans[k][i] = isSameGroup(keyColumns, k, group.get(i), group.get(i + 1)) ? spans[k][i + 1] + 1 : 1;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            Object[] row = group.get(i);
+            List<Object[]> columns = new ArrayList<Object[]>(row.length);
+            for (int c = 0; c < row.length; c++) {
+                int level = indexOf(keyColumns, c);
+                if (level < 0) {
+                    columns.add(set(row[c]));
+                } else if (i == 0 || !isSameGroup(keyColumns, level, group.get(i - 1), row)) {
+                    //分组起始行:纵向合并整个分组
+                    columns.add(set(row[c], 1, spans[level][i]));
+                }
+                //分组内其余行:位置已被合并单元格占用,不输出
+            }
+            createRow(cellStyle, this.rowHeight, columns);
+            rowLength = Math.max(rowLength, row.length);
+        }
+        //小计行
+        if (groupAggregator != null) {
+            if (keyColumns.length > 0) {
+                createSubtotalRow(cellStyle, keyColumns, aggregates, useFormula, groupAggregator, subtotalLabel,
+                        firstRow, vals.size() - 1, rowLength);
+            }
+            totalAggregator.merge(groupAggregator);
+            groupAggregator.reset();
+        }
+    }
+
+    /**
+     * 生成小计(合计)行
+     *
+     * @param cellStyle  行样式
+     * @param keyColumns 分组列序号
+     * @param aggregates 各列汇总方式
+     * @param useFormula 是否使用SUBTOTAL公式
+     * @param aggregator 汇总值
+     * @param label      标题,写在第一个分组列(无分组列时为第一列)
+     * @param firstRow   汇总范围起始行(数据容器中的位置)
+     * @param lastRow    汇总范围结束行(数据容器中的位置)
+     * @param rowLength  列数
+     */
+    private void createSubtotalRow(CellStyle cellStyle, int[] keyColumns, AggregateEnum[] aggregates, boolean useFormula,
+                                   Aggregator aggregator, String label, int firstRow, int lastRow, int rowLength) {
+        int labelColumn = keyColumns.length > 0 ? keyColumns[0] : 0;
+        List<Object[]> columns = new ArrayList<Object[]>(rowLength);
+        for (int c = 0; c < rowLength; c++) {
+            AggregateEnum aggregate = c < aggregates.length ? aggregates[c] : null;
+            Object val = null;
+            if (aggregate != null) {
+                val = aggregator.get(c, aggregate);
+                if (useFormula) {
+                    val = new SubtotalFormula(aggregate.getFunctionNum(), firstRow, lastRow, val);
+                }
+            } else if (c == labelColumn) {
+                val = label;
+            }
+            columns.add(set(val, subtotalStyle));
+        }
+        createRow(cellStyle, this.rowHeight, columns);
+    }
+
+    /**
+     * 设置小计、合计行样式
+     *
+     * @param subtotalStyle 为空则使用行样式
+     */
+    public void setSubtotalStyle(CellStyle subtotalStyle) {
+        this.subtotalStyle = subtotalStyle;
+    }
+
+    /**
+     * 设置小计、合计行标题
+     *
+     * @param subtotalLabel 小计行标题（默认:小计）
+     * @param totalLabel    合计行标题（默认:合计）
+     */
+    public void setSubtotalLabel(String subtotalLabel, String totalLabel) {
+        this.subtotalLabel = subtotalLabel;
+        this.totalLabel = totalLabel;
+    }
+
+    /**
+     * 汇总值累加
+     * <br>只累加数值,COUNT为数值个数(与Excel的COUNT一致)
+     */
+    private static class Aggregator {
+
+        private final double[] sum;
+
+        private final double[] min;
+
+        private final double[] max;
+
+        private final long[] count;
+
+        Aggregator(int columns) {
+            sum = new double[columns];
+            min = new double[columns];
+            max = new double[columns];
+            count = new long[columns];
+            reset();
+        }
+
+        void add(Object[] row) {
+            for (int c = 0; c < row.length && c < count.length; c++) {
+                if (row[c] instanceof Number) {
+                    double value = ((Number) row[c]).doubleValue();
+                    sum[c] += value;
+                    min[c] = Math.min(min[c], value);
+                    max[c] = Math.max(max[c], value);
+                    count[c]++;
+                }
+            }
+        }
+
+        void merge(Aggregator other) {
+            for (int c = 0; c < count.length; c++) {
+                sum[c] += other.sum[c];
+                min[c] = Math.min(min[c], other.min[c]);
+                max[c] = Math.max(max[c], other.max[c]);
+                count[c] += other.count[c];
+            }
+        }
+
+        void reset() {
+            Arrays.fill(sum, 0);
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            Arrays.fill(count, 0);
+        }
+
+        Object get(int c, AggregateEnum aggregate) {
+            switch (aggregate) {
+                case SUM:
+                    return sum[c];
+                case COUNT:
+                    return count[c];
+                case MIN:
+                    return count[c] > 0 ? min[c] : null;
+                case MAX:
+                    return count[c] > 0 ? max[c] : null;
+                default:
+                    return count[c] > 0 ? sum[c] / count[c] : null;
+            }
+        }
+    }
+
+    /**
+     * 按键延迟加载的值
+     * <br>相同加载器(同一对象)、相同键视为同一个值,缓存导出时按键生成缓存键
+     */
+    private static class DeferredValue {
+
+        private final ValueLoader<Object> loader;
+
+        private final Object key;
+
+        @SuppressWarnings("unchecked")
+        DeferredValue(ValueLoader<?> loader, Object key) {
+            this.loader = (ValueLoader<Object>) loader;
+            this.key = key;
+        }
+
+        Object load() {
+            return loader.load(key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof DeferredValue)) {
+                return false;
+            }
+            DeferredValue other = (DeferredValue) obj;
+            return loader == other.loader && (key == null ? other.key == null : key.equals(other.key));
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(loader) * 31 + (key == null ? 0 : key.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return "lookup:" + loader.getClass().getName() + ":" + key;
+        }
+    }
+
+    /**
+     * SUBTOTAL公式
+     * <br>汇总范围为数据容器中的行,合并计算时换算为单元格地址
+     */
+    private static class SubtotalFormula {
+
+        private final int functionNum;
+
+        private final int firstRow;
+
+        private final int lastRow;
+
+        /**
+         * 计算结果,作为公式的缓存值写入
+         */
+        private final Object value;
+
+        SubtotalFormula(int functionNum, int firstRow, int lastRow, Object value) {
+            this.functionNum = functionNum;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.value = value;
+        }
+
+        /**
+         * 生成公式
+         *
+         * @param rowIndexes 数据容器各行对应的表格行
+         * @param column     单元格所在列
+         */
+        String toFormula(int[] rowIndexes, int column) {
+            String col = CellReference.convertNumToColString(column);
+            return "SUBTOTAL(" + functionNum + "," + col + (rowIndexes[firstRow] + 1) + ":" + col + (rowIndexes[lastRow] + 1) + ")";
+        }
+
+        @Override
+        public String toString() {
+            return "SUBTOTAL(" + functionNum + "," + firstRow + ":" + lastRow + ")=" + value;
+        }
+    }
+
+    /**
+     * 两行前level+1级分组列是否都相同
+     */
+    private boolean isSameGroup(int[] keyColumns, int level, Object[] row1, Object[] row2) {
+        for (int k = 0; k <= level; k++) {
+            if (!isEqual(row1[keyColumns[k]], row2[keyColumns[k]])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 添加列式数据表
+     * <br>数据表放在之前所有行(含合并区域)之后,从起始列开始,之后添加的行排在数据表下方
+     *
+     * @param rowHeight 行高
+     * @param table     数据表
+     */
+    public void createTable(float rowHeight, ColumnTable table) {
+        this.vals.add(table.toRow(), rowHeight);
+    }
+
+    /**
+     * 添加列式数据表(默认行高)
+     *
+     * @param table 数据表
+     */
+    public void createTable(ColumnTable table) {
+        createTable(rowHeight, table);
+    }
+
+    /**
+     * 设置数据容器内存中保留的最大行数
+     * <br>超过后将行数据写入临时文件,合并计算时按顺序读回,适用于无法流式导出的大数据量Excel2003
+     * <br>String、数值、下拉选项以外的值仍保留在内存中
+     *
+     * @param spillThreshold 最大行数,小于等于0则不写入临时文件（默认）
+     */
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+        if (vals != null) {
+            vals.setSpillThreshold(spillThreshold);
+        }
+    }
+
+    /**
+     * 设置合并计算并行度
+     * <br>数据容器超过10000行时,在没有行合并跨越的位置把行切分为互不影响的分段,各分段并行计算单元格位置,
+     * 写入单元格仍在当前线程中按顺序执行;分段之间可能相互影响时自动改为顺序计算,测试模式下始终顺序计算
+     *
+     * @param layoutParallelism 并行线程数,小于等于1则顺序计算（默认）
+     */
+    public void setLayoutParallelism(int layoutParallelism) {
+        this.layoutParallelism = layoutParallelism;
+    }
+
+    /**
+     * 设置是否把=开头的文本作为公式写入
+     * <br>公式中可以使用R1C1相对引用,写入时按单元格实际位置换算,见ExportFormula
+     *
+     * @param formulaPrefix 是否启用（默认否）
+     */
+    public void setFormulaPrefix(boolean formulaPrefix) {
+        this.formulaPrefix = formulaPrefix;
+    }
+
+    /**
+     * 设置生成前是否统一计算公式
+     * <br>启用后生成前用一个计算器计算所有没有缓存值的公式并写入结果,打开文件时不需要全部重新计算;
+     * 未启用、流式导出或公式无法计算时,设置为打开文件时重新计算
+     *
+     * @param evaluateFormulas 是否启用（默认否）
+     */
+    public void setEvaluateFormulas(boolean evaluateFormulas) {
+        this.evaluateFormulas = evaluateFormulas;
+    }
+
+    /**
+     * 合并计算复用线程内的占用记录表
+     */
+    void useRecordScratch() {
+        this.recordScratch = true;
+    }
+
+    /**
+     * 当前sheet已添加的行数
+     */
+    public int getRowCount() {
+        return vals != null ? vals.size() : 0;
+    }
+
+    /**
+     * 设置单元格内容
+     *
+     * @param obj       数据对象:会自动识别数据对象类型,如果此对象为字符串数组则单元格为下拉框,
+     *                  如果此对象为ExportPicture则在单元格(含合并区域)中插入图片,
+     *                  如果此对象为ValueSupplier或lookup生成的值则在写入单元格时才计算,
+     *                  如果此对象为ExportFormula则写入公式
+     * @param colSpan   列合并,最小值为1
+     * @param rowSpan   行合并,最小值为1
+     * @param cellStyle 单元格样式
+     * @author liuxu
+     * @date 17-10-27上午8:47
+     */
+    public Object[] set(Object obj, int colSpan, int rowSpan, CellStyle cellStyle) {
+        return new Object[]{obj, colSpan - 1, rowSpan - 1, cellStyle};
+    }
+
+    /**
+     * 设置单元格内容
      *
      * @param obj 数据对象
      *            <br>会自动识别数据对象类型
@@ -873,6 +1837,36 @@ public class SimpleExport {
         return new String[][]{{""}, options};
     }
 
+    /**
+     * 生成按键延迟加载的值
+     * <br>在set方法中使用,写入单元格时才调用加载器;启用值缓存后相同加载器、相同键只加载一次
+     * <br>启用导出缓存且未指定缓存键时,生成摘要会加载所有值,结果保留到写入单元格时使用(不重复加载,
+     * 但在合并计算完成前全部驻留内存);需要写入时才加载请指定缓存键
+     *
+     * @param loader 加载器
+     * @param key    键
+     */
+    public <K> Object lookup(ValueLoader<K> loader, K key) {
+        return new DeferredValue(loader, key);
+    }
+
+    /**
+     * 设置延迟加载值的缓存数量
+     * <br>缓存在本次导出内有效,超出数量时淘汰最久未使用的值
+     *
+     * @param valueCacheSize 最大缓存数量,小于等于0则不缓存（默认）
+     */
+    public void setValueCacheSize(final int valueCacheSize) {
+        this.valueCache = valueCacheSize <= 0 ? null : new LinkedHashMap<DeferredValue, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<DeferredValue, Object> eldest) {
+                return size() > valueCacheSize;
+            }
+        };
+    }
+
     // ----------------------------------------执行函数----------------------------------------
 
     /**
@@ -888,12 +1882,23 @@ public class SimpleExport {
         int[] tableSize = new int[2];
         // Y轴 （Y轴合并单元格数量数）
         int countY = 0;
-        for (int i = 0; i < vals.size(); i++) {
+        // 数据表占位行(数据表不占用记录表)及数据表行数
+        int tables = 0;
+        long tableRows = 0;
+        RowBuffer.Cursor cursor = vals.cursor(workbook);
+        for (Object[][] columns = cursor.next(); columns != null; columns = cursor.next()) {
+            ColumnTable table = ColumnTable.fromRow(columns);
+            if (table != null) {
+                tableSize[0] = Math.max(tableSize[0], table.getColumnCount());
+                tables++;
+                tableRows += table.getRowCount();
+                continue;
+            }
             // X轴（获取最大列宽）
             int maxX = 0;
-            for (int j = 0; j < vals.get(i).length; j++) {
-                maxX += (Integer) vals.get(i)[j][1] + 1;
-                countY += (Integer) vals.get(i)[j][1] * (Integer) vals.get(i)[j][2];
+            for (int j = 0; j < columns.length; j++) {
+                maxX += (Integer) columns[j][1] + 1;
+                countY += (Integer) columns[j][1] * (Integer) columns[j][2];
             }
             if (maxX > tableSize[0]) {
                 tableSize[0] = maxX;
@@ -902,7 +1907,8 @@ public class SimpleExport {
         // 除数不能为0
         int maxX = tableSize[0] == 0 ? 1 : tableSize[0];
         // Y轴
-        tableSize[1] = vals.size() + (countY / maxX) + (countY % maxX > 0 ? 1 : 0);
+        totalRows = vals.size() - tables + tableRows;
+        tableSize[1] = vals.size() - tables + (countY / maxX) + (countY % maxX > 0 ? 1 : 0);
         return tableSize;
     }
 
@@ -976,6 +1982,122 @@ public class SimpleExport {
 
     }
 
+    /**
+     * 插入图片
+     * <br>图片铺满单元格(含合并区域),同一工作簿中相同内容的图片只写入一次,每个sheet只创建一个绘图对象
+     *
+     * @param val      图片
+     * @param firstRow 起始行
+     * @param lastRow  结束行
+     * @param firstCol 起始列
+     * @param lastCol  结束列
+     * @return 插入图片后单元格不再有值,返回null
+     */
+    private Object createPicture(Object val, int firstRow, int lastRow, int firstCol, int lastCol) {
+        if (!(val instanceof ExportPicture)) {
+            return val;
+        }
+        ExportPicture picture = (ExportPicture) val;
+        Integer pictureIndex = pictureIndexes.get(picture.getKey());
+        if (pictureIndex == null) {
+            pictureIndex = workbook.addPicture(picture.getData(), picture.getPictureType());
+            pictureIndexes.put(picture.getKey(), pictureIndex);
+        }
+        //createDrawingPatriarch会清除sheet中已有的图片,只在第一次插入时创建
+        Drawing drawing = sheet.getDrawingPatriarch();
+        if (drawing == null) {
+            drawing = sheet.createDrawingPatriarch();
+        }
+        ClientAnchor anchor = workbook.getCreationHelper().createClientAnchor();
+        anchor.setCol1(firstCol);
+        anchor.setRow1(firstRow);
+        anchor.setCol2(lastCol + 1);
+        anchor.setRow2(lastRow + 1);
+        drawing.createPicture(anchor, pictureIndex);
+        return null;
+    }
+
+    /**
+     * 计算延迟值:ValueSupplier直接计算,按键加载的值优先从缓存获取
+     *
+     * @param val 单元格值
+     * @return 计算后的值,不是延迟值则原样返回
+     */
+    private Object resolveValue(Object val) {
+        if (!(val instanceof ValueSupplier) && !(val instanceof DeferredValue)) {
+            return val;
+        }
+        //生成摘要时已计算
+        if (digestedValues != null && digestedValues.containsKey(val)) {
+            return digestedValues.remove(val);
+        }
+        if (val instanceof ValueSupplier) {
+            return ((ValueSupplier) val).get();
+        }
+        DeferredValue deferred = (DeferredValue) val;
+        if (valueCache == null) {
+            return deferred.load();
+        }
+        Object cached = valueCache.get(deferred);
+        if (cached == null && !valueCache.containsKey(deferred)) {
+            cached = deferred.load();
+            valueCache.put(deferred, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * 写入单元格:下拉选项、图片、合并区域及单元格内容
+     *
+     * @param rowObj     数据容器行的起始行
+     * @param column     单元格元组:{值,列合并增量,行合并增量,样式}
+     * @param firstRow   起始行
+     * @param firstCol   起始列
+     * @param rowIndexes 数据容器各行对应的表格行(用于公式引用)
+     */
+    private void executeCell(Row rowObj, Object[] column, int firstRow, int firstCol, int[] rowIndexes) {
+        Object val = resolveValue(column[0]);//待输出值(延迟计算的值在此计算)
+        int lastRow = firstRow + (Integer) column[2];
+        int lastCol = firstCol + (Integer) column[1];
+        layoutLastRow = Math.max(layoutLastRow, lastRow);
+        checkSharedStrings();
+
+        //如果值为数组则生成下拉菜单
+        val = createSelect(val, firstRow, lastRow, firstCol, lastCol);
+
+        //如果值为图片则插入图片
+        val = createPicture(val, firstRow, lastRow, firstCol, lastCol);
+
+        //普通合并
+        if (lastRow != firstRow || lastCol != firstCol) {
+            sheet.addMergedRegion(new CellRangeAddress(firstRow, lastRow, firstCol, lastCol));
+        }
+
+        //=开头的文本作为公式
+        if (formulaPrefix && val instanceof String && ((String) val).length() > 1 && ((String) val).charAt(0) == '=') {
+            val = ExportFormula.of((String) val);
+        }
+
+        //设置单元格内容
+        if (val instanceof SubtotalFormula) {
+            Cell cellObj = createOrGetCell(rowObj, firstCol);
+            cellObj.setCellFormula(((SubtotalFormula) val).toFormula(rowIndexes, firstCol));
+            setCellValues(cellObj, ((SubtotalFormula) val).value);
+        } else if (val instanceof ExportFormula) {
+            //相对引用按单元格实际所在位置换算
+            ExportFormula formula = (ExportFormula) val;
+            Cell cellObj = createOrGetCell(rowObj, firstCol);
+            cellObj.setCellFormula(formula.toFormula(rowObj.getRowNum(), firstCol));
+            if (formula.getCachedValue() != null) {
+                setCellValues(cellObj, formula.getCachedValue());
+            } else {
+                hasUncachedFormulas = true;
+            }
+        } else {
+            setCellValues(createOrGetCell(rowObj, firstCol), val);
+        }
+    }
+
     /**
      * 刷新单元格使用情况,并设置单元格样式
      *
@@ -984,19 +2106,25 @@ public class SimpleExport {
      * @param lastRow   结束行
      * @param firstCol  起始列
      * @param lastCol   结束列
+     * @return 重叠(已被占用)的单元格数
      * @author liuxu
      * @date 17-11-7下午8:26
      */
-    private void refreshUsedAndSetStyle(CellStyle cellStyle, int[] startPoint, int firstRow, int lastRow, int firstCol, int lastCol) {
+    private int refreshUsedAndSetStyle(CellStyle cellStyle, int[] startPoint, int firstRow, int lastRow, int firstCol, int lastCol) {
+        int overlap = 0;
         // 写入占位,并设置单元格样式
         for (int m = firstRow; m <= lastRow; m++) {
             for (int n = firstCol; n <= lastCol; n++) {
                 //获取cell并设置样式
                 createOrGetCell(createOrGetRow(m + startPoint[1]), n + startPoint[0]).setCellStyle(cellStyle);
-                //写入占位
-                record[m][n] = 1;
+                //写入占位(分段并行计算时不使用记录表)
+                if (record != null) {
+                    overlap += record[m][n];
+                    record[m][n] = 1;
+                }
             }
         }
+        return overlap;
     }
 
     /**
@@ -1008,92 +2136,432 @@ public class SimpleExport {
      * @date 17-10-17下午2:01
      */
     public void mergeCalculate(int[] startPoint) {
-        int[] tableSize = calculateTableSize();
-        //设置列宽
-        executeSetAllColumnWidth(tableSize[0], startPoint[0]);
-        // 占用记录表
-        record = new int[tableSize[1]][tableSize[0]];
-        // 当前行
-        int row = 0;
-        for (int i = 0; i < vals.size(); i++) {
-            // 当前列
-            int col = 0;
-            // 创建行
-            Row rowObj = createOrGetRow(startPoint[1] + row);
-
-            // 设置行高
-            rowObj.setHeightInPoints(rowsHeight.get(i));
-
-            for (int j = 0; j < vals.get(i).length; j++) {
-
-                // 检查占用，获取可用位置
-                stop:
-                for (int m = row; m < tableSize[1]; m++) {
-                    for (int n = col; n < tableSize[0]; n++) {
-                        if (record[m][n] == 0) {
-                            row = m;
-                            col = n;
-                            break stop;
+        //启用缓存且未指定缓存键时,累加表格内容摘要
+        if (exportCache != null && cacheKey == null) {
+            digestTable(startPoint);
+        }
+        executeMergeCalculate(startPoint);
+    }
+
+    /**
+     * 执行合并计算
+     *
+     * @param startPoint startPoint[0]-X轴[列] <br>
+     *                   startPoint[1]-Y轴[行]
+     */
+    private void executeMergeCalculate(int[] startPoint) {
+        try {
+            //混合方式在第一次合并计算时按已添加的行选择文本存储方式
+            if (isStreamingPending) {
+                executeUseStreaming();
+            }
+            int[] tableSize = calculateTableSize();
+            //内存预算检查,必要时切换为流式导出
+            checkMemoryBudget(tableSize);
+            isCalculated = true;
+            //设置列宽
+            executeSetAllColumnWidth(tableSize[0], startPoint[0]);
+            placedTables.clear();
+            layoutLastRow = -1;
+            // 大表格分段并行计算,不满足条件时顺序计算
+            if (!isTest && layoutParallelism > 1 && vals.size() >= PARALLEL_LAYOUT_MIN_ROWS
+                    && executeParallelLayout(startPoint, tableSize)) {
+                //条件格式:按放置结果换算行号
+                executeConditionalFormatting(startPoint);
+                return;
+            }
+            // 占用记录表
+            record = createRecord(tableSize[1], tableSize[0]);
+            // 每个sheet单独诊断
+            if (isTest) {
+                diagnostics = new LayoutDiagnostics(DIAGNOSTICS_CAPACITY);
+            }
+            // 数据容器各行对应的表格行(用于公式引用)
+            int[] rowIndexes = new int[vals.size()];
+            // 当前行
+            int row = 0;
+            // 表格起点:每放置一个数据表,之后的行向下平移数据表的行数
+            int[] origin = {startPoint[0], startPoint[1]};
+            // 已完成的行数(进度)
+            long done = 0;
+            if (progressListener != null) {
+                progressStart = System.nanoTime();
+            }
+            RowBuffer.Cursor cursor = vals.cursor(workbook);
+            try {
+                for (int i = 0; i < rowIndexes.length; i++) {
+                    Object[][] columns = cursor.next();
+                    //定期检查是否已取消
+                    if (i % CANCEL_CHECK_INTERVAL == 0) {
+                        cancelToken.checkCancelled();
+                    }
+                    //定期回调进度
+                    if (progressListener != null && i % progressInterval == 0) {
+                        fireProgress(ExportProgressListener.PhaseEnum.LAYOUT, done, totalRows);
+                    }
+                    // 数据表:放在当前行之后第一个完全空闲的行,不记录占用
+                    ColumnTable table = ColumnTable.fromRow(columns);
+                    if (table != null) {
+                        int skipped = 0;
+                        while (row + skipped < tableSize[1] && !isFreeRow(row + skipped)) {
+                            skipped++;
+                        }
+                        //跳过的行不再放置后续单元格,扩充记录表补足
+                        if (skipped > 0) {
+                            record = Arrays.copyOf(record, tableSize[1] + skipped);
+                            for (int m = tableSize[1]; m < record.length; m++) {
+                                record[m] = new int[tableSize[0]];
+                            }
+                            tableSize[1] = record.length;
+                            row += skipped;
                         }
+                        rowIndexes[i] = origin[1] + row;
+                        executeColumnTable(table, origin[0], origin[1] + row, cursor.height(), done);
+                        origin[1] += table.getRowCount();
+                        done += table.getRowCount();
+                        continue;
                     }
-                }
-
-                Object val = vals.get(i)[j][0];//待输出值
-
-                int rowMergeIncrement = (Integer) vals.get(i)[j][2];//行合并增量
-                int colMergeIncrement = (Integer) vals.get(i)[j][1];//列合并增量
-
-                // 合并单元格计算（startPoint[0]-X轴[列] startPoint[1]-Y轴[行]）
-                int firstRow = startPoint[1] + row;
-                int lastRow = startPoint[1] + row + rowMergeIncrement;
-                int firstCol = startPoint[0] + col;
-                int lastCol = startPoint[0] + col + colMergeIncrement;
+                    // 当前列
+                    int col = 0;
+                    // 创建行
+                    Row rowObj = createOrGetRow(origin[1] + row);
+
+                    // 设置行高
+                    rowObj.setHeightInPoints(cursor.height());
+
+                    for (int j = 0; j < columns.length; j++) {
+
+                        // 检查占用，获取可用位置
+                        stop:
+                        for (int m = row; m < tableSize[1]; m++) {
+                            for (int n = col; n < tableSize[0]; n++) {
+                                if (record[m][n] == 0) {
+                                    row = m;
+                                    col = n;
+                                    break stop;
+                                }
+                            }
+                        }
 
-                //如果值为数组则生成下拉菜单
-                val = createSelect(val, firstRow, lastRow, firstCol, lastCol);
+                        int rowMergeIncrement = (Integer) columns[j][2];//行合并增量
+                        int colMergeIncrement = (Integer) columns[j][1];//列合并增量
 
-                //普通合并
-                if (rowMergeIncrement != 0 || colMergeIncrement != 0) {
-                    sheet.addMergedRegion(new CellRangeAddress(firstRow, lastRow, firstCol, lastCol));
-                }
+                        // 写入单元格（origin[0]-X轴[列] origin[1]-Y轴[行]）
+                        executeCell(rowObj, columns[j], origin[1] + row, origin[0] + col, rowIndexes);
 
-                //设置单元格内容
-                setCellValues(createOrGetCell(rowObj, firstCol), val);
+                        // 刷新单元格使用情况
+                        int overlap = refreshUsedAndSetStyle((CellStyle) columns[j][3], origin, row, row + rowMergeIncrement, col, col + colMergeIncrement);
 
-                // 刷新单元格使用情况
-                refreshUsedAndSetStyle((CellStyle) vals.get(i)[j][3], startPoint, row, row + rowMergeIncrement, col, col + colMergeIncrement);
+                        // 记录放置事件
+                        if (isTest) {
+                            diagnostics.record(i, row, row + rowMergeIncrement, col, col + colMergeIncrement, overlap);
+                        }
 
-                // 占用情况显示
-                if (isTest) {
-                    testOccupation();
+                        //当前列位置计算
+                        col += (Integer) columns[j][1] + 1;
+                    }
+                    rowIndexes[i] = origin[1] + row;
+                    //当前行位置计算
+                    ++row;
+                    ++done;
                 }
-
-                //当前列位置计算
-                col += (Integer) vals.get(i)[j][1] + 1;
+            } finally {
+                cursor.close();
+            }
+            if (progressListener != null) {
+                fireProgress(ExportProgressListener.PhaseEnum.LAYOUT, done, totalRows);
             }
-            //当前行位置计算
-            ++row;
+            //条件格式:按放置结果换算行号
+            executeConditionalFormatting(startPoint);
+            // 检查重叠、空洞,摘要通过getDiagnostics获取
+            if (isTest) {
+                diagnostics.validate(record);
+            }
+        } catch (ExportCancelledException e) {
+            //已取消:释放工作簿及临时文件
+            release();
+            throw e;
+        } finally {
+            digestedValues = null;
         }
     }
 
     /**
-     * 合并计算(默认起点为0,0)
+     * 分段并行合并计算:并行计算单元格坐标,再按顺序写入单元格
      *
-     * @author liuxu
-     * @date 17-10-17下午4:02
-     */
-    public void mergeCalculate() {
-        mergeCalculate(new int[]{0, 0});
-    }
-
-    /**
+     * @param startPoint 起始位置
+     * @param tableSize  表格大小
+     * @return 是否已完成,分段之间可能相互影响时返回false,由调用方顺序计算
+     */
+    private boolean executeParallelLayout(int[] startPoint, int[] tableSize) {
+        //不使用占用记录表:清除上一个sheet留下的记录表
+        record = null;
+        BandLayout layout = new BandLayout(tableSize[0]);
+        RowBuffer.Cursor cursor = vals.cursor(workbook);
+        try {
+            for (Object[][] columns = cursor.next(); columns != null; columns = cursor.next()) {
+                layout.addRow(columns);
+            }
+        } finally {
+            cursor.close();
+        }
+        ForkJoinPool pool = new ForkJoinPool(layoutParallelism);
+        try {
+            int minBandRows = Math.max(PARALLEL_LAYOUT_MIN_BAND, vals.size() / (layoutParallelism * 4));
+            if (!layout.compute(pool, minBandRows, tableSize[1], cancelToken)) {
+                return false;
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // 数据容器各行对应的表格行(用于公式引用)
+        int[] rowIndexes = new int[vals.size()];
+        // 已完成的行数(进度)
+        long done = 0;
+        if (progressListener != null) {
+            progressStart = System.nanoTime();
+        }
+        cursor = vals.cursor(workbook);
+        try {
+            for (int i = 0; i < rowIndexes.length; i++) {
+                Object[][] columns = cursor.next();
+                //定期检查是否已取消
+                if (i % CANCEL_CHECK_INTERVAL == 0) {
+                    cancelToken.checkCancelled();
+                }
+                //定期回调进度
+                if (progressListener != null && i % progressInterval == 0) {
+                    fireProgress(ExportProgressListener.PhaseEnum.LAYOUT, done, totalRows);
+                }
+                int rowStart = startPoint[1] + layout.getRowStart(i);
+                ColumnTable table = ColumnTable.fromRow(columns);
+                if (table != null) {
+                    rowIndexes[i] = rowStart;
+                    executeColumnTable(table, startPoint[0], rowStart, cursor.height(), done);
+                    done += table.getRowCount();
+                    continue;
+                }
+                // 创建行,设置行高
+                Row rowObj = createOrGetRow(rowStart);
+                rowObj.setHeightInPoints(cursor.height());
+                for (int j = 0; j < columns.length; j++) {
+                    int firstRow = startPoint[1] + layout.getCellRow(i, j);
+                    int firstCol = startPoint[0] + layout.getCellCol(i, j);
+                    executeCell(rowObj, columns[j], firstRow, firstCol, rowIndexes);
+                    refreshUsedAndSetStyle((CellStyle) columns[j][3], startPoint, layout.getCellRow(i, j),
+                            layout.getCellRow(i, j) + (Integer) columns[j][2], layout.getCellCol(i, j),
+                            layout.getCellCol(i, j) + (Integer) columns[j][1]);
+                }
+                rowIndexes[i] = startPoint[1] + layout.getRowEnd(i);
+                ++done;
+            }
+        } finally {
+            cursor.close();
+        }
+        if (progressListener != null) {
+            fireProgress(ExportProgressListener.PhaseEnum.LAYOUT, done, totalRows);
+        }
+        return true;
+    }
+
+    /**
+     * 创建占用记录表
+     * <br>启用复用时使用线程内的记录表,只清空本次使用的行;记录表的行数、列数可能大于表格大小
+     *
+     * @param rows    行数
+     * @param columns 列数
+     */
+    private int[][] createRecord(int rows, int columns) {
+        if (!recordScratch || isTest || (long) rows * columns > RECORD_SCRATCH_MAX_CELLS) {
+            return new int[rows][columns];
+        }
+        int[][] scratch = RECORD_SCRATCH.get();
+        if (scratch == null || scratch.length < rows || (scratch.length > 0 && scratch[0].length < columns)) {
+            int oldRows = scratch == null ? 0 : scratch.length;
+            int oldColumns = oldRows == 0 ? 0 : scratch[0].length;
+            int newRows = Math.max(rows, oldRows);
+            int newColumns = Math.max(columns, oldColumns);
+            if ((long) newRows * newColumns > RECORD_SCRATCH_MAX_CELLS) {
+                return new int[rows][columns];
+            }
+            scratch = new int[newRows][newColumns];
+            RECORD_SCRATCH.set(scratch);
+            return scratch;
+        }
+        for (int m = 0; m < rows; m++) {
+            Arrays.fill(scratch[m], 0);
+        }
+        return scratch;
+    }
+
+    /**
+     * 记录表中的行是否完全空闲
+     *
+     * @param row 行
+     */
+    private boolean isFreeRow(int row) {
+        for (int n = 0; n < record[row].length; n++) {
+            if (record[row][n] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 写入数据表:逐行创建单元格,按列类型直接写入数值
+     *
+     * @param table     数据表
+     * @param firstCol  起始列
+     * @param firstRow  起始行
+     * @param rowHeight 行高
+     * @param done      之前已完成的行数(进度)
+     */
+    private void executeColumnTable(ColumnTable table, int firstCol, int firstRow, float rowHeight, long done) {
+        placedTables.add(new int[]{firstRow, table.getRowCount()});
+        layoutLastRow = Math.max(layoutLastRow, firstRow + table.getRowCount() - 1);
+        int columnCount = table.getColumnCount();
+        byte[] types = new byte[columnCount];
+        Object[] columns = new Object[columnCount];
+        CellStyle[] styles = new CellStyle[columnCount];
+        for (int j = 0; j < columnCount; j++) {
+            types[j] = table.getType(j);
+            columns[j] = table.getColumn(j);
+            styles[j] = table.getStyle(j);
+        }
+        for (int r = 0; r < table.getRowCount(); r++) {
+            //定期检查是否已取消
+            if (r % CANCEL_CHECK_INTERVAL == 0) {
+                cancelToken.checkCancelled();
+            }
+            //定期回调进度
+            if (progressListener != null && r % progressInterval == 0) {
+                fireProgress(ExportProgressListener.PhaseEnum.LAYOUT, done + r, totalRows);
+            }
+            Row rowObj = createOrGetRow(firstRow + r);
+            rowObj.setHeightInPoints(rowHeight);
+            checkSharedStrings();
+            for (int j = 0; j < columnCount; j++) {
+                Cell cellObj = rowObj.createCell(firstCol + j);
+                if (styles[j] != null) {
+                    cellObj.setCellStyle(styles[j]);
+                }
+                switch (types[j]) {
+                    case ColumnTable.TYPE_DOUBLE:
+                        cellObj.setCellValue(((double[]) columns[j])[r]);
+                        break;
+                    case ColumnTable.TYPE_LONG:
+                        cellObj.setCellValue(((long[]) columns[j])[r]);
+                        break;
+                    case ColumnTable.TYPE_INT:
+                        cellObj.setCellValue(((int[]) columns[j])[r]);
+                        break;
+                    default:
+                        String val = ((String[]) columns[j])[r];
+                        if (val != null) {
+                            cellObj.setCellValue(val);
+                        }
+                }
+            }
+        }
+    }
+
+    /**
+     * 合并计算(默认起点为0,0)
+     *
+     * @author liuxu
+     * @date 17-10-17下午4:02
+     */
+    public void mergeCalculate() {
+        mergeCalculate(new int[]{0, 0});
+    }
+
+    /**
      * 执行生成Excel
      *
      * @author liuxu
      * @date 17-10-17下午2:06
      */
     public void executeGenerate() throws IOException {
-        workbook.write(os);
+        //已由缓存输出
+        if (servedFromCache) {
+            return;
+        }
+        try {
+            cancelToken.checkCancelled();
+            if (exportCache == null) {
+                writeWorkbook(os);
+                return;
+            }
+            //命中缓存则直接输出,否则生成后写入缓存
+            String key = currentCacheKey();
+            if (exportCache.serve(key, os)) {
+                return;
+            }
+            File temp = exportCache.createTempFile();
+            OutputStream tempOs = new CancelOutputStream(new FileOutputStream(temp));
+            boolean isWritten = false;
+            try {
+                writeWorkbook(tempOs);
+                tempOs.close();
+                isWritten = true;
+            } finally {
+                if (!isWritten) {
+                    IOUtils.closeQuietly(tempOs);
+                    temp.delete();
+                }
+            }
+            exportCache.commit(key, temp, os);
+        } catch (IOException e) {
+            //连接断开等写出失败:释放工作簿及临时文件
+            release();
+            throw e;
+        } catch (RuntimeException e) {
+            release();
+            //写出失败后POI关闭流时抛出的异常可能掩盖连接断开,按取消处理
+            if (!(e instanceof ExportCancelledException) && cancelToken.isCancelled()) {
+                throw new ExportCancelledException(cancelToken.getReason(), e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 写出前处理公式:统一计算并写入缓存值,无法计算或未启用计算时设置打开文件时重新计算
+     * <br>流式导出已写出的行无法再读取,不统一计算
+     */
+    private void finishFormulas() {
+        if (!hasUncachedFormulas) {
+            return;
+        }
+        if (evaluateFormulas && !isStreaming()) {
+            try {
+                //同一个计算器计算所有公式,中间结果只计算一次
+                workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+                return;
+            } catch (RuntimeException e) {
+                //包含不支持的函数等:由Excel打开时计算
+            }
+        }
+        workbook.setForceFormulaRecalculation(true);
+    }
+
+    /**
+     * 写出工作簿,设置了进度监听时统计写出的字节数
+     *
+     * @param out 输出流
+     */
+    private void writeWorkbook(OutputStream out) throws IOException {
+        finishFormulas();
+        if (progressListener == null) {
+            workbook.write(out);
+            return;
+        }
+        progressStart = System.nanoTime();
+        ProgressOutputStream progressOs = new ProgressOutputStream(out);
+        workbook.write(progressOs);
+        fireProgress(ExportProgressListener.PhaseEnum.WRITE, progressOs.count, progressOs.count);
     }
 
     /**
@@ -1107,7 +2575,19 @@ public class SimpleExport {
      * Create time: 2017年4月5日下午3:10:27
      */
     public void excelGenerate(int[] startPoint) throws IOException {
-        mergeCalculate(startPoint);
+        if (exportCache == null) {
+            mergeCalculate(startPoint);
+        } else {
+            if (cacheKey == null) {
+                digestTable(startPoint);
+            }
+            //命中缓存则跳过合并计算
+            if (servedFromCache || exportCache.serve(currentCacheKey(), os)) {
+                servedFromCache = true;
+                return;
+            }
+            executeMergeCalculate(startPoint);
+        }
         executeGenerate();
     }
 
@@ -1132,8 +2612,7 @@ public class SimpleExport {
      * @date 17-10-17下午4:02
      */
     public void excelGenerate() throws IOException {
-        mergeCalculate();
-        executeGenerate();
+        excelGenerate(new int[]{0, 0});
     }
 
     /**
@@ -1172,12 +2651,642 @@ public class SimpleExport {
      */
     public void close() {
         IOUtils.closeQuietly(os);
+        release();
+    }
+
+    /**
+     * 释放工作簿、数据容器,并删除流式导出的临时文件
+     */
+    private void release() {
+        if (workbook instanceof SXSSFWorkbook) {
+            ((SXSSFWorkbook) workbook).dispose();
+        }
+        workbook = null;
+        sheet = null;
+        if (vals != null) {
+            vals.close();
+            vals = null;
+        }
+        record = null;
+    }
+
+    // ----------------------------------------取消导出----------------------------------------
+
+    /**
+     * 设置取消标记
+     * <br>可在其它线程中调用cancel取消导出,或设置超时时间
+     *
+     * @param cancelToken 取消标记
+     */
+    public void setCancelToken(ExportCancelToken cancelToken) {
+        this.cancelToken = cancelToken;
+    }
+
+    /**
+     * 获取取消标记
+     */
+    public ExportCancelToken getCancelToken() {
+        return cancelToken;
+    }
+
+    /**
+     * 可取消的输出流
+     * <br>写出前检查取消标记,写出失败(如客户端断开连接)时标记为已取消
+     */
+    private class CancelOutputStream extends FilterOutputStream {
+
+        CancelOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            cancelToken.checkCancelled();
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                cancelToken.cancel("连接已断开:" + e.getMessage());
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            cancelToken.checkCancelled();
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                cancelToken.cancel("连接已断开:" + e.getMessage());
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                cancelToken.cancel("连接已断开:" + e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    // ----------------------------------------进度函数----------------------------------------
+
+    /**
+     * 设置进度监听
+     *
+     * @param progressListener 进度监听,为null则不回调
+     * @param progressInterval 合并计算时回调的间隔行数
+     */
+    public void setProgressListener(ExportProgressListener progressListener, int progressInterval) {
+        if (progressInterval <= 0) {
+            throw new IllegalStateException("进度回调间隔必须大于0");
+        }
+        this.progressListener = progressListener;
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * 设置进度监听（每1000行回调一次）
+     *
+     * @param progressListener 进度监听,为null则不回调
+     */
+    public void setProgressListener(ExportProgressListener progressListener) {
+        setProgressListener(progressListener, 1000);
+    }
+
+    /**
+     * 回调进度:按当前阶段开始后的耗时计算速度和剩余时间
+     *
+     * @param phase 导出阶段
+     * @param done  已完成数
+     * @param total 总数,未知时为-1
+     */
+    private void fireProgress(ExportProgressListener.PhaseEnum phase, long done, long total) {
+        double seconds = (System.nanoTime() - progressStart) / 1e9;
+        double throughput = seconds > 0 ? done / seconds : 0;
+        long eta = total >= 0 && throughput > 0 ? (long) ((total - done) / throughput * 1000) : -1;
+        progressListener.onProgress(phase, done, total, throughput, eta);
+    }
+
+    /**
+     * 统计写出字节数的输出流,每写出PROGRESS_BYTES回调一次进度
+     */
+    private class ProgressOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        private long next = PROGRESS_BYTES;
+
+        ProgressOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count(len);
+        }
+
+        private void count(int len) {
+            count += len;
+            if (count >= next) {
+                next = count + PROGRESS_BYTES;
+                fireProgress(ExportProgressListener.PhaseEnum.WRITE, count, -1);
+            }
+        }
+    }
+
+    // ----------------------------------------内存预算----------------------------------------
+
+    /**
+     * 设置内存预算
+     * <br>合并计算前按表格大小预估POI对象占用的内存,超出预算时按处理方式切换为流式导出或直接报错
+     *
+     * @param memoryBudget 内存预算（字节）,小于等于0则不限制
+     * @param budgetPolicy 超出预算时的处理方式
+     */
+    public void setMemoryBudget(long memoryBudget, BudgetPolicyEnum budgetPolicy) {
+        this.memoryBudget = memoryBudget;
+        this.budgetPolicy = budgetPolicy;
+    }
+
+    /**
+     * 设置内存预算,超出预算时切换为流式导出
+     *
+     * @param memoryBudget 内存预算（字节）,小于等于0则不限制
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        setMemoryBudget(memoryBudget, BudgetPolicyEnum.STREAMING);
+    }
+
+    /**
+     * 设置流式导出内存中保留的行数（默认100）
+     * <br>行合并跨度不能超过此值
+     *
+     * @param streamingWindow
+     */
+    public void setStreamingWindow(int streamingWindow) {
+        this.streamingWindow = streamingWindow;
+    }
+
+    /**
+     * 设置流式导出的文本存储方式
+     * <br>须在切换为流式导出之前调用;混合方式在切换时按已添加的行判断,切换时还没有添加行则在第一次合并计算时判断
+     *
+     * @param sharedStrings 文本存储方式
+     */
+    public void setSharedStrings(SharedStringsEnum sharedStrings) {
+        this.sharedStrings = sharedStrings;
+    }
+
+    /**
+     * 设置流式导出的文本存储方式为混合
+     *
+     * @param sharedStringsLimit 使用共享字符串表的不同文本数上限（默认10000）
+     */
+    public void setSharedStrings(int sharedStringsLimit) {
+        this.sharedStrings = SharedStringsEnum.HYBRID;
+        this.sharedStringsLimit = sharedStringsLimit;
+    }
+
+    /**
+     * 设置流式导出共享字符串表的不同文本数上限
+     * <br>共享字符串表在写出完成前一直保留在内存中,超过上限时报错,避免不同文本过多时占用大量内存
+     *
+     * @param sharedStringsCap 不同文本数上限（默认1048576）
+     */
+    public void setSharedStringsCap(int sharedStringsCap) {
+        this.sharedStringsCap = sharedStringsCap;
+    }
+
+    /**
+     * 检查共享字符串表是否超过上限
+     */
+    private void checkSharedStrings() {
+        if (sharedStringsTable != null && sharedStringsTable.getUniqueCount() > sharedStringsCap) {
+            throw new IllegalStateException("共享字符串表超过上限" + sharedStringsCap + ",请使用内联或混合方式");
+        }
+    }
+
+    /**
+     * 流式导出是否使用共享字符串表
+     * <br>混合方式:已添加的行中有文本且不同文本数不超过上限
+     */
+    private boolean isUseSharedStrings() {
+        switch (sharedStrings) {
+            case SHARED:
+                return true;
+            case HYBRID:
+                long distinct = strings.distinctEstimate();
+                return distinct > 0 && distinct <= sharedStringsLimit;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 是否为流式导出
+     * <br>混合方式等待第一次合并计算时工作簿仍为XSSF,返回false
+     */
+    public boolean isStreaming() {
+        return workbook instanceof SXSSFWorkbook;
+    }
+
+    /**
+     * 切换为流式导出
+     * <br>仅支持Excel2007,且必须在第一次合并计算之前调用
+     * <br>已创建的样式、字体、sheet保留,切换后需重新通过getSheet获取sheet对象
+     * <br>混合文本存储方式且还没有添加行时,在第一次合并计算时才创建流式工作簿
+     */
+    public void useStreaming() {
+        if (isStreaming() || isStreamingPending) {
+            return;
+        }
+        if (excelVersionEnum.isExcel2003()) {
+            throw new IllegalStateException("Excel2003格式不支持流式导出");
+        }
+        if (isCalculated) {
+            throw new IllegalStateException("已有sheet完成合并计算,无法切换为流式导出");
+        }
+        //混合方式还没有文本:在第一次合并计算时再选择
+        if (sharedStrings == SharedStringsEnum.HYBRID && strings.distinctEstimate() == 0) {
+            isStreamingPending = true;
+            return;
+        }
+        executeUseStreaming();
+    }
+
+    /**
+     * 创建流式工作簿,按文本存储方式决定是否使用共享字符串表
+     */
+    private void executeUseStreaming() {
+        isStreamingPending = false;
+        String sheetName = sheet != null ? sheet.getSheetName() : null;
+        XSSFWorkbook xssfWorkbook = (XSSFWorkbook) workbook;
+        boolean useSharedStrings = isUseSharedStrings();
+        workbook = new SXSSFWorkbook(xssfWorkbook, streamingWindow, false, useSharedStrings);
+        sheet = sheetName != null ? workbook.getSheet(sheetName) : null;
+        sharedStringsTable = useSharedStrings ? xssfWorkbook.getSharedStringSource() : null;
+    }
+
+    /**
+     * 预估当前sheet占用的内存（字节）
+     */
+    public long estimateMemory() {
+        return estimateMemory(calculateTableSize(), isStreaming() || isStreamingPending);
+    }
+
+    /**
+     * 预估占用的内存（字节）
+     * <br>包含占用记录表、单元格对象、合并区域
+     *
+     * @param tableSize 表格大小
+     * @param streaming 是否为流式导出
+     */
+    private long estimateMemory(int[] tableSize, boolean streaming) {
+        //合并区域数量
+        long mergedRegions = 0;
+        //数据表单元格数及行数
+        long tableCells = 0;
+        long tableRows = 0;
+        RowBuffer.Cursor cursor = vals.cursor(workbook);
+        for (Object[][] row = cursor.next(); row != null; row = cursor.next()) {
+            ColumnTable table = ColumnTable.fromRow(row);
+            if (table != null) {
+                tableCells += (long) table.getRowCount() * table.getColumnCount();
+                tableRows += table.getRowCount();
+                continue;
+            }
+            for (Object[] column : row) {
+                if ((Integer) column[1] != 0 || (Integer) column[2] != 0) {
+                    mergedRegions++;
+                }
+            }
+        }
+        //占用记录表
+        long bytes = (long) tableSize[0] * tableSize[1] * 4;
+        bytes += mergedRegions * MERGED_REGION_BYTES;
+        if (streaming) {
+            bytes += (long) tableSize[0] * Math.min(tableSize[1] + tableRows, streamingWindow) * SXSSF_CELL_BYTES;
+        } else {
+            bytes += ((long) tableSize[0] * tableSize[1] + tableCells)
+                    * (excelVersionEnum.isExcel2003() ? HSSF_CELL_BYTES : XSSF_CELL_BYTES);
+        }
+        return bytes;
+    }
+
+    /**
+     * 内存预算检查
+     *
+     * @param tableSize 表格大小
+     */
+    private void checkMemoryBudget(int[] tableSize) {
+        if (memoryBudget <= 0) {
+            return;
+        }
+        long estimate = estimateMemory(tableSize, isStreaming());
+        //非流式导出时,已完成的sheet仍在内存中
+        if (!isStreaming() && usedMemory + estimate > memoryBudget
+                && budgetPolicy == BudgetPolicyEnum.STREAMING && !excelVersionEnum.isExcel2003() && !isCalculated) {
+            //布局前所有行已添加,直接按已有文本选择存储方式
+            executeUseStreaming();
+            estimate = estimateMemory(tableSize, true);
+        }
+        if (!isStreaming()) {
+            estimate += usedMemory;
+        }
+        if (estimate > memoryBudget) {
+            throw new IllegalStateException("导出预计占用内存" + (estimate >> 20) + "MB,超出内存预算"
+                    + (memoryBudget >> 20) + "MB（表格" + tableSize[1] + "行" + tableSize[0] + "列）");
+        }
+        usedMemory = estimate;
+    }
+
+    // ----------------------------------------缓存函数----------------------------------------
+
+    /**
+     * 设置导出缓存
+     * <br>启用后,相同内容(或相同缓存键)的导出直接输出缓存文件,不再重新生成
+     *
+     * @param exportCache 导出缓存,可在多个导出之间共享
+     */
+    public void setExportCache(ExportCache exportCache) {
+        this.exportCache = exportCache;
+    }
+
+    /**
+     * 设置缓存键
+     * <br>未设置时按数据、行高列宽、样式定义计算内容摘要作为缓存键
+     *
+     * @param cacheKey 缓存键,例:报表名称+查询参数
+     */
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * 按缓存键直接输出缓存
+     * <br>在组装数据之前调用,命中时无需再创建行和生成Excel
+     *
+     * @param cacheKey 缓存键
+     * @return 是否命中
+     */
+    public boolean serveFromCache(String cacheKey) throws IOException {
+        this.cacheKey = cacheKey;
+        if (exportCache != null && exportCache.serve(ExportCache.key(cacheKey), os)) {
+            servedFromCache = true;
+        }
+        return servedFromCache;
+    }
+
+    /**
+     * 获取当前缓存键
+     */
+    private String currentCacheKey() throws IOException {
+        if (cacheKey != null) {
+            return ExportCache.key(cacheKey);
+        }
+        if (tableDigest == null) {
+            tableDigest = ExportCache.newDigest();
+        }
+        try {
+            //复制后计算,不影响后续sheet的累加
+            return "c" + ExportCache.toHex(((MessageDigest) tableDigest.clone()).digest());
+        } catch (CloneNotSupportedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * 累加当前sheet的内容摘要
+     * <br>包含Excel版本、公式设置、sheet名称、起始位置、行高列宽、单元格数据及跨度、样式定义
+     *
+     * @param startPoint 起始位置
+     */
+    private void digestTable(int[] startPoint) {
+        if (tableDigest == null) {
+            tableDigest = ExportCache.newDigest();
+        }
+        DataOutputStream dos = new DataOutputStream(new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }, tableDigest));
+        try {
+            dos.writeUTF(excelVersionEnum.name());
+            //=开头文本是否作为公式、生成前是否计算公式
+            dos.writeBoolean(formulaPrefix);
+            dos.writeBoolean(evaluateFormulas);
+            digestString(dos, sheet.getSheetName());
+            dos.writeInt(startPoint[0]);
+            dos.writeInt(startPoint[1]);
+            //列宽
+            dos.writeInt(columnWidth);
+            for (Map.Entry<Integer, Integer> entry : new TreeMap<Integer, Integer>(columnsWidth).entrySet()) {
+                dos.writeInt(entry.getKey());
+                dos.writeInt(entry.getValue());
+            }
+            //单元格数据,样式只记录索引,定义在最后统一记录
+            Set<Short> styleIndexes = new TreeSet<Short>();
+            dos.writeInt(vals.size());
+            RowBuffer.Cursor cursor = vals.cursor(workbook);
+            for (Object[][] columns = cursor.next(); columns != null; columns = cursor.next()) {
+                dos.writeFloat(cursor.height());
+                ColumnTable table = ColumnTable.fromRow(columns);
+                if (table != null) {
+                    digestColumnTable(dos, table, styleIndexes);
+                    continue;
+                }
+                dos.writeInt(columns.length);
+                for (Object[] column : columns) {
+                    digestValue(dos, column[0]);
+                    dos.writeInt((Integer) column[1]);
+                    dos.writeInt((Integer) column[2]);
+                    CellStyle cellStyle = (CellStyle) column[3];
+                    dos.writeShort(cellStyle == null ? -1 : cellStyle.getIndex());
+                    if (cellStyle != null) {
+                        styleIndexes.add(cellStyle.getIndex());
+                    }
+                }
+            }
+            //条件格式
+            dos.writeInt(conditionalRules.size());
+            for (ConditionalRule rule : conditionalRules) {
+                dos.writeInt(rule.type);
+                dos.writeInt(rule.firstRow);
+                dos.writeInt(rule.lastRow);
+                dos.writeInt(rule.firstCol);
+                dos.writeInt(rule.lastCol);
+                dos.writeByte(rule.operator);
+                digestString(dos, rule.value);
+                dos.writeShort(rule.color);
+            }
+            //样式定义
+            for (Short index : styleIndexes) {
+                digestStyle(dos, workbook.getCellStyleAt(index));
+            }
+            dos.flush();
+        } catch (IOException e) {
+            //摘要输出流不会抛出异常
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 记录数据表摘要
+     *
+     * @param dos
+     * @param table
+     * @param styleIndexes 已使用的样式
+     */
+    private void digestColumnTable(DataOutputStream dos, ColumnTable table, Set<Short> styleIndexes) throws IOException {
+        dos.writeInt(-1);
+        dos.writeInt(table.getRowCount());
+        dos.writeInt(table.getColumnCount());
+        for (int j = 0; j < table.getColumnCount(); j++) {
+            CellStyle cellStyle = table.getStyle(j);
+            dos.writeByte(table.getType(j));
+            dos.writeShort(cellStyle == null ? -1 : cellStyle.getIndex());
+            if (cellStyle != null) {
+                styleIndexes.add(cellStyle.getIndex());
+            }
+            Object column = table.getColumn(j);
+            for (int r = 0; r < table.getRowCount(); r++) {
+                switch (table.getType(j)) {
+                    case ColumnTable.TYPE_DOUBLE:
+                        dos.writeDouble(((double[]) column)[r]);
+                        break;
+                    case ColumnTable.TYPE_LONG:
+                        dos.writeDouble(((long[]) column)[r]);
+                        break;
+                    case ColumnTable.TYPE_INT:
+                        dos.writeDouble(((int[]) column)[r]);
+                        break;
+                    default:
+                        digestValue(dos, ((String[]) column)[r]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录单元格值摘要,按setCellValues的输出方式区分类型
+     *
+     * @param dos
+     * @param val
+     */
+    private void digestValue(DataOutputStream dos, Object val) throws IOException {
+        //延迟计算的值按计算结果生成摘要,结果保留到写入单元格时使用
+        //按键加载的值:加载器没有稳定的标识,按加载结果生成摘要,并使用单独的类型标记
+        if (val instanceof ValueSupplier || val instanceof DeferredValue) {
+            if (val instanceof DeferredValue) {
+                dos.writeByte(4);
+            }
+            Object deferred = val;
+            val = resolveValue(deferred);
+            if (digestedValues == null) {
+                digestedValues = new IdentityHashMap<Object, Object>();
+            }
+            digestedValues.put(deferred, val);
+        }
+        if (val == null) {
+            dos.writeByte(0);
+        } else if (val instanceof String) {
+            dos.writeByte(1);
+            digestString(dos, (String) val);
+        } else if (val instanceof ExportFormula) {
+            dos.writeByte(5);
+            digestString(dos, ((ExportFormula) val).getFormula());
+            digestValue(dos, ((ExportFormula) val).getCachedValue());
+        } else if (val instanceof SubtotalFormula) {
+            SubtotalFormula formula = (SubtotalFormula) val;
+            dos.writeByte(6);
+            dos.writeInt(formula.functionNum);
+            dos.writeInt(formula.firstRow);
+            dos.writeInt(formula.lastRow);
+            digestValue(dos, formula.value);
+        } else if (val instanceof ExportPicture) {
+            //图片按类型和内容摘要区分
+            dos.writeByte(7);
+            dos.writeInt(((ExportPicture) val).getPictureType());
+            digestString(dos, ((ExportPicture) val).getKey());
+        } else if (val instanceof Double || val instanceof Integer || val instanceof Long || val instanceof BigDecimal) {
+            dos.writeByte(2);
+            dos.writeDouble(((Number) val).doubleValue());
+        } else if (val instanceof String[][]) {
+            dos.writeByte(3);
+            for (String[] options : (String[][]) val) {
+                dos.writeInt(options == null ? -1 : options.length);
+                if (options != null) {
+                    for (String option : options) {
+                        digestString(dos, option);
+                    }
+                }
+            }
+        } else {
+            dos.writeByte(1);
+            digestString(dos, String.valueOf(val));
+        }
+    }
+
+    /**
+     * 记录样式定义摘要
+     *
+     * @param dos
+     * @param cellStyle
+     */
+    private void digestStyle(DataOutputStream dos, CellStyle cellStyle) throws IOException {
+        dos.writeShort(cellStyle.getIndex());
+        dos.writeShort(cellStyle.getAlignment());
+        dos.writeShort(cellStyle.getVerticalAlignment());
+        dos.writeShort(cellStyle.getBorderTop());
+        dos.writeShort(cellStyle.getBorderBottom());
+        dos.writeShort(cellStyle.getBorderLeft());
+        dos.writeShort(cellStyle.getBorderRight());
+        dos.writeBoolean(cellStyle.getWrapText());
+        dos.writeShort(cellStyle.getFillPattern());
+        dos.writeShort(cellStyle.getFillForegroundColor());
+        dos.writeShort(cellStyle.getFillBackgroundColor());
+        digestString(dos, cellStyle.getDataFormatString());
+        Font font = workbook.getFontAt(cellStyle.getFontIndex());
+        digestString(dos, font.getFontName());
+        dos.writeShort(font.getFontHeight());
+        dos.writeShort(font.getBoldweight());
+        dos.writeShort(font.getColor());
+        dos.writeBoolean(font.getItalic());
+        dos.writeByte(font.getUnderline());
+    }
+
+    /**
+     * 记录字符串摘要
+     *
+     * @param dos
+     * @param str
+     */
+    private void digestString(DataOutputStream dos, String str) throws IOException {
+        if (str == null) {
+            dos.writeInt(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes("UTF-8");
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
     }
 
     // ----------------------------------------测试函数----------------------------------------
 
     /**
      * 开启测试
+     * <br>合并计算时记录最近的单元格放置事件,结束后检查重叠、空洞,结果通过getDiagnostics获取
      *
      * @param isTest
      * @author 刘旭 (LiuXu)
@@ -1189,29 +3298,77 @@ public class SimpleExport {
     }
 
     /**
-     * 打印当前单元格使用情况
+     * 获取最近一次合并计算的诊断信息(仅测试模式)
+     */
+    public LayoutDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * 当前单元格使用情况
      *
+     * @return 占用图,由调用方输出
      * @author 刘旭 (LiuXu)
      * <p>
      * Create time: 2017年4月5日下午1:37:09
      */
-    public void testOccupation() {
-        System.out.println("----------------------------------------");
-        for (int i = 0; i < record.length; i++) {
-            StringBuilder sb = new StringBuilder(" | ");
-            for (int j = 0; j < record[i].length; j++) {
-                if (record[i][j] == 1) {
-                    sb.append("    ■");
-                } else {
-                    sb.append("    □");
-                }
-            }
-            System.out.println(sb.toString());
-        }
+    public String testOccupation() {
+        return testOccupation(0, record.length - 1);
+    }
+
+    /**
+     * 指定行范围的单元格使用情况
+     *
+     * @param firstRow 起始行(表格内坐标)
+     * @param lastRow  结束行(含)
+     * @return 占用图,由调用方输出
+     */
+    public String testOccupation(int firstRow, int lastRow) {
+        return LayoutDiagnostics.render(record, firstRow, lastRow);
     }
 
     // ----------------------------------------工具函数----------------------------------------
 
+    /**
+     * 创建线程工厂(守护线程)
+     *
+     * @param name 线程名称前缀
+     */
+    static ThreadFactory newThreadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * 创建已完成的Future
+     *
+     * @param value 结果
+     * @param e     异常,不为空则get时抛出
+     */
+    private static <V> Future<V> completedFuture(final V value, final Throwable e) {
+        FutureTask<V> future = new FutureTask<V>(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                if (e instanceof Exception) {
+                    throw (Exception) e;
+                }
+                if (e instanceof Error) {
+                    throw (Error) e;
+                }
+                return value;
+            }
+        });
+        future.run();
+        return future;
+    }
+
     /**
      * 集合转数组
      *
@@ -1223,6 +3380,27 @@ public class SimpleExport {
         return list.toArray(new Object[list.size()][]);
     }
 
+    /**
+     * 值是否相等(null安全)
+     */
+    private static boolean isEqual(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    /**
+     * 查找数组元素位置
+     *
+     * @return 不存在返回-1
+     */
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * 格式化文件名
      *
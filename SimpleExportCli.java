@@ -0,0 +1,686 @@
+package com.demo.video.util;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 命令行批量导出
+ * <br>按布局文件(表头、列类型、样式)把CSV或JSON Lines文件导出为.xls、.xlsx或.csv,适用于ETL任务中的短时批量调用
+ * <br>布局文件、CSV、JSON均为手写解析,不使用反射和第三方解析库;导出为.csv时不加载POI
+ * <br>用法:java com.demo.video.util.SimpleExportCli 布局文件 输入文件(.csv|.jsonl) 输出文件(.xls|.xlsx|.csv)
+ * <p>
+ * 布局文件(UTF-8,#开头为注释,按出现顺序生效):
+ * <pre>
+ * sheet=销售明细
+ * # 表头行:样式;单元格;单元格...  单元格为 文本[*列跨度[*行跨度]],样式为main、deputy、content、none
+ * header=main;销售报表*4
+ * header=deputy;门店;日期;数量;金额
+ * # 列:名称:类型[:数据格式]  类型为string、int、long、double、decimal;JSON按名称取值,CSV按顺序取值
+ * column=store:string
+ * column=date:string
+ * column=qty:long
+ * column=amount:double:#,##0.00
+ * # 列宽(字符数)、行高、CSV分隔符、CSV首行是否为标题、内存中保留的最大行数
+ * width=0:20
+ * rowHeight=18
+ * csv.separator=,
+ * csv.header=true
+ * spill=50000
+ * </pre>
+ * 文本中的;、*、\使用\转义
+ */
+public class SimpleExportCli {
+
+    /**
+     * 列类型
+     */
+    enum ColumnTypeEnum {
+        STRING, INT, LONG, DOUBLE, DECIMAL;
+
+        /**
+         * 文本转换为单元格值,空文本为null
+         */
+        Object parse(String text) {
+            if (text == null || text.length() == 0) {
+                return null;
+            }
+            switch (this) {
+                case INT:
+                    return Integer.valueOf(text.trim());
+                case LONG:
+                    return Long.valueOf(text.trim());
+                case DOUBLE:
+                    return Double.valueOf(text.trim());
+                case DECIMAL:
+                    return new BigDecimal(text.trim());
+                default:
+                    return text;
+            }
+        }
+    }
+
+    /**
+     * 表头单元格
+     */
+    static class HeaderCell {
+        String text;
+        int colSpan = 1;
+        int rowSpan = 1;
+    }
+
+    /**
+     * 表头行
+     */
+    static class HeaderRow {
+        String style;
+        List<HeaderCell> cells = new ArrayList<HeaderCell>();
+    }
+
+    /**
+     * 列
+     */
+    static class Column {
+        String name;
+        ColumnTypeEnum type;
+        String format;
+    }
+
+    /**
+     * 布局
+     */
+    private String sheetName = "sheet1";
+    private final List<HeaderRow> headers = new ArrayList<HeaderRow>();
+    private final List<Column> columns = new ArrayList<Column>();
+    private final Map<Integer, Integer> widths = new TreeMap<Integer, Integer>();
+    private float rowHeight = 0;
+    private char csvSeparator = ',';
+    private boolean csvHeader = false;
+    private int spillThreshold = 50000;
+
+    /**
+     * 命令行入口
+     *
+     * @param args 布局文件 输入文件 输出文件
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("用法:\n  布局文件 输入文件(.csv|.jsonl) 输出文件(.xls|.xlsx|.csv)");
+            System.exit(2);
+        }
+        long start = System.currentTimeMillis();
+        SimpleExportCli cli = new SimpleExportCli();
+        cli.loadLayout(new File(args[0]));
+        long rows = cli.export(new File(args[1]), new File(args[2]));
+        System.out.println("已导出" + rows + "行,耗时" + (System.currentTimeMillis() - start) + "ms:" + args[2]);
+    }
+
+    /**
+     * 导出
+     *
+     * @param input  输入文件:.jsonl、.json为JSON Lines,其它为CSV
+     * @param output 输出文件:.xls、.xlsx、.csv
+     * @return 数据行数
+     */
+    long export(File input, File output) throws IOException {
+        if (columns.isEmpty()) {
+            throw new IllegalStateException("布局文件未定义列");
+        }
+        String name = output.getName().toLowerCase();
+        RecordReader reader = openReader(input);
+        try {
+            if (name.endsWith(".csv")) {
+                return exportCsv(reader, output);
+            } else if (name.endsWith(".xlsx")) {
+                return exportExcel(reader, output, SimpleExport.ExcelVersionEnum.EXCEL2007);
+            } else if (name.endsWith(".xls")) {
+                return exportExcel(reader, output, SimpleExport.ExcelVersionEnum.EXCEL2003);
+            }
+            throw new IllegalStateException("不支持的输出格式:" + output.getName());
+        } finally {
+            reader.close();
+        }
+    }
+
+    // ----------------------------------------布局文件----------------------------------------
+
+    /**
+     * 读取布局文件
+     *
+     * @param file 布局文件
+     */
+    void loadLayout(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                int eq = line.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalStateException("布局文件第" + lineNumber + "行格式错误:" + line);
+                }
+                try {
+                    parseLayoutLine(line.substring(0, eq).trim(), line.substring(eq + 1).trim());
+                } catch (RuntimeException e) {
+                    throw new IllegalStateException("布局文件第" + lineNumber + "行格式错误:" + line, e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void parseLayoutLine(String key, String value) {
+        if ("sheet".equals(key)) {
+            sheetName = value;
+        } else if ("header".equals(key)) {
+            List<String> parts = split(value, ';');
+            HeaderRow header = new HeaderRow();
+            header.style = parts.get(0).trim();
+            for (int i = 1; i < parts.size(); i++) {
+                List<String> spans = split(parts.get(i), '*');
+                HeaderCell cell = new HeaderCell();
+                cell.text = spans.get(0);
+                cell.colSpan = spans.size() > 1 ? Integer.parseInt(spans.get(1).trim()) : 1;
+                cell.rowSpan = spans.size() > 2 ? Integer.parseInt(spans.get(2).trim()) : 1;
+                header.cells.add(cell);
+            }
+            headers.add(header);
+        } else if ("column".equals(key)) {
+            String[] parts = value.split(":", 3);
+            Column column = new Column();
+            column.name = parts[0].trim();
+            column.type = parts.length > 1 ? ColumnTypeEnum.valueOf(parts[1].trim().toUpperCase()) : ColumnTypeEnum.STRING;
+            column.format = parts.length > 2 ? parts[2].trim() : null;
+            columns.add(column);
+        } else if ("width".equals(key)) {
+            String[] parts = value.split(":");
+            widths.put(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } else if ("rowHeight".equals(key)) {
+            rowHeight = Float.parseFloat(value);
+        } else if ("csv.separator".equals(key)) {
+            csvSeparator = "\\t".equals(value) ? '\t' : value.charAt(0);
+        } else if ("csv.header".equals(key)) {
+            csvHeader = Boolean.parseBoolean(value);
+        } else if ("spill".equals(key)) {
+            spillThreshold = Integer.parseInt(value);
+        } else {
+            throw new IllegalStateException("未知配置:" + key);
+        }
+    }
+
+    /**
+     * 按分隔符拆分,\转义
+     */
+    private static List<String> split(String value, char separator) {
+        List<String> parts = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                sb.append(value.charAt(++i));
+            } else if (c == separator) {
+                parts.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        parts.add(sb.toString());
+        return parts;
+    }
+
+    // ----------------------------------------输出----------------------------------------
+
+    /**
+     * 导出Excel:Excel2007使用流式导出,数据容器超过阈值的行写入临时文件
+     */
+    private long exportExcel(RecordReader reader, File output, SimpleExport.ExcelVersionEnum excelVersionEnum) throws IOException {
+        final SimpleExport export = new SimpleExport(output, excelVersionEnum, sheetName);
+        try {
+            export.setSpillThreshold(spillThreshold);
+            if (!excelVersionEnum.isExcel2003()) {
+                export.useStreaming();
+            }
+            if (rowHeight > 0) {
+                export.setRowHeight(rowHeight);
+            }
+            for (Map.Entry<Integer, Integer> width : widths.entrySet()) {
+                export.setColumnWidth(width.getKey(), width.getValue() * 256);
+            }
+            //表头
+            for (HeaderRow header : headers) {
+                CellStyle style = headerStyle(export, header.style);
+                List<Object[]> cells = new ArrayList<Object[]>();
+                for (HeaderCell cell : header.cells) {
+                    cells.add(export.set(cell.text, cell.colSpan, cell.rowSpan, style));
+                }
+                export.createRow(cells);
+            }
+            //列样式
+            final CellStyle[] styles = new CellStyle[columns.size()];
+            for (int i = 0; i < styles.length; i++) {
+                String format = columns.get(i).format;
+                if (format != null && format.length() > 0) {
+                    styles[i] = export.createContentStyle();
+                    styles[i].setDataFormat(export.getWorkbook().createDataFormat().getFormat(format));
+                }
+            }
+            //数据行
+            final long[] count = new long[1];
+            export.createRows(export.getContentStyle(), reader, new RowConverter<String[]>() {
+                @Override
+                public Object[][] convert(String[] record) {
+                    count[0]++;
+                    Object[][] row = new Object[columns.size()][];
+                    for (int i = 0; i < row.length; i++) {
+                        Object value = parseValue(record, i, count[0]);
+                        row[i] = styles[i] != null ? export.set(value, styles[i]) : export.set(value);
+                    }
+                    return row;
+                }
+            }, 1, 1);
+            export.excelGenerate();
+            return count[0];
+        } finally {
+            export.close();
+        }
+    }
+
+    private static CellStyle headerStyle(SimpleExport export, String style) {
+        if ("main".equals(style)) {
+            return export.getMainTitleStyle();
+        } else if ("deputy".equals(style)) {
+            return export.getDeputyTitleStyle();
+        } else if ("content".equals(style)) {
+            return export.getContentStyle();
+        } else if ("none".equals(style)) {
+            return null;
+        }
+        throw new IllegalStateException("未知样式:" + style);
+    }
+
+    /**
+     * 导出CSV:表头合并单元格只在左上角输出文本,数据按列类型校验后输出
+     */
+    private long exportCsv(RecordReader reader, File output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"), 1 << 16);
+        try {
+            //各列被上方行合并占用到的行
+            int[] coveredUntil = new int[0];
+            for (int r = 0; r < headers.size(); r++) {
+                List<String> line = new ArrayList<String>();
+                for (HeaderCell cell : headers.get(r).cells) {
+                    while (line.size() < coveredUntil.length && coveredUntil[line.size()] > r) {
+                        line.add("");
+                    }
+                    if (line.size() + cell.colSpan > coveredUntil.length) {
+                        coveredUntil = Arrays.copyOf(coveredUntil, line.size() + cell.colSpan);
+                    }
+                    for (int c = 0; c < cell.colSpan; c++) {
+                        coveredUntil[line.size()] = r + cell.rowSpan;
+                        line.add(c == 0 ? cell.text : "");
+                    }
+                }
+                writeCsvLine(writer, line.toArray(new String[line.size()]));
+            }
+            long count = 0;
+            String[] line = new String[columns.size()];
+            while (reader.hasNext()) {
+                String[] record = reader.next();
+                count++;
+                for (int i = 0; i < line.length; i++) {
+                    Object value = parseValue(record, i, count);
+                    line[i] = value != null ? value.toString() : "";
+                }
+                writeCsvLine(writer, line);
+            }
+            return count;
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeCsvLine(Writer writer, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(csvSeparator);
+            }
+            String value = values[i];
+            boolean quote = value.indexOf(csvSeparator) >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (quote) {
+                writer.write('"');
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(value);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private Object parseValue(String[] record, int column, long rowNumber) {
+        String text = column < record.length ? record[column] : null;
+        try {
+            return columns.get(column).type.parse(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("第" + rowNumber + "行" + columns.get(column).name + "列格式错误:" + text, e);
+        }
+    }
+
+    // ----------------------------------------输入----------------------------------------
+
+    private RecordReader openReader(File input) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), "UTF-8"), 1 << 16);
+        String name = input.getName().toLowerCase();
+        if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return new JsonLinesReader(reader);
+        }
+        CsvReader csv = new CsvReader(reader);
+        if (csvHeader && csv.hasNext()) {
+            csv.next();
+        }
+        return csv;
+    }
+
+    /**
+     * 逐条读取输入记录,字段按列顺序排列;读取失败抛出IllegalStateException
+     */
+    private abstract static class RecordReader implements Iterator<String[]> {
+
+        final Reader reader;
+
+        /**
+         * 预读的记录,已读完为null
+         */
+        private String[] next;
+        private boolean fetched;
+
+        RecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * 读取下一条记录
+         *
+         * @return 记录,已读完返回null
+         */
+        abstract String[] read() throws IOException;
+
+        @Override
+        public boolean hasNext() {
+            if (!fetched) {
+                try {
+                    next = read();
+                } catch (IOException e) {
+                    throw new IllegalStateException("读取输入文件失败", e);
+                }
+                fetched = true;
+            }
+            return next != null;
+        }
+
+        @Override
+        public String[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            fetched = false;
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                //忽略
+            }
+        }
+    }
+
+    /**
+     * CSV读取:支持引号、引号内的分隔符和换行、""转义
+     */
+    private class CsvReader extends RecordReader {
+
+        private final List<String> fields = new ArrayList<String>();
+        private final StringBuilder field = new StringBuilder();
+
+        CsvReader(Reader reader) {
+            super(reader);
+        }
+
+        /**
+         * 读取一条记录,跳过空行
+         */
+        @Override
+        String[] read() throws IOException {
+            String[] record;
+            do {
+                record = readLine();
+            } while (record != null && record.length == 0);
+            return record;
+        }
+
+        /**
+         * 读取一行
+         *
+         * @return 空行返回空数组,结束返回null
+         */
+        private String[] readLine() throws IOException {
+            fields.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            boolean any = false;
+            //是否有换行以外的内容
+            boolean content = false;
+            int c;
+            while ((c = reader.read()) >= 0) {
+                any = true;
+                if (c != '\r' && c != '\n') {
+                    content = true;
+                }
+                if (quoted) {
+                    if (c == '"') {
+                        reader.mark(1);
+                        int d = reader.read();
+                        if (d == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            if (d >= 0) {
+                                reader.reset();
+                            }
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == csvSeparator) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+            }
+            if (!any) {
+                return null;
+            }
+            if (!content) {
+                return new String[0];
+            }
+            fields.add(field.toString());
+            return fields.toArray(new String[fields.size()]);
+        }
+    }
+
+    /**
+     * JSON Lines读取:每行一个平铺的JSON对象,按列名称取值,嵌套对象和数组按原文输出
+     */
+    private class JsonLinesReader extends RecordReader {
+
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private final StringBuilder sb = new StringBuilder();
+        private String line;
+        private int pos;
+        private long lineNumber;
+
+        JsonLinesReader(Reader reader) {
+            super(reader instanceof BufferedReader ? reader : new BufferedReader(reader));
+            for (int i = 0; i < columns.size(); i++) {
+                indexes.put(columns.get(i).name, i);
+            }
+        }
+
+        @Override
+        String[] read() throws IOException {
+            do {
+                line = ((BufferedReader) reader).readLine();
+                lineNumber++;
+                if (line == null) {
+                    return null;
+                }
+                line = line.trim();
+            } while (line.length() == 0);
+            pos = 0;
+            String[] record = new String[columns.size()];
+            try {
+                expect('{');
+                skipSpace();
+                if (peek() == '}') {
+                    return record;
+                }
+                while (true) {
+                    skipSpace();
+                    String key = readString();
+                    skipSpace();
+                    expect(':');
+                    skipSpace();
+                    String value = readValue();
+                    Integer index = indexes.get(key);
+                    if (index != null) {
+                        record[index] = value;
+                    }
+                    skipSpace();
+                    char c = line.charAt(pos++);
+                    if (c == '}') {
+                        return record;
+                    } else if (c != ',') {
+                        throw new IllegalStateException("期望,或}");
+                    }
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("JSON第" + lineNumber + "行格式错误(位置" + pos + "):" + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * 读取值:字符串返回内容,null返回null,其它返回原文
+         */
+        private String readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            int start = pos;
+            if (c == '{' || c == '[') {
+                skipNested();
+            } else {
+                while (pos < line.length() && ",}] \t".indexOf(line.charAt(pos)) < 0) {
+                    pos++;
+                }
+            }
+            String value = line.substring(start, pos);
+            return "null".equals(value) ? null : value;
+        }
+
+        private String readString() {
+            expect('"');
+            sb.setLength(0);
+            while (true) {
+                char c = line.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char e = line.charAt(pos++);
+                switch (e) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        sb.append((char) Integer.parseInt(line.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(e);
+                }
+            }
+        }
+
+        private void skipNested() {
+            int depth = 0;
+            do {
+                char c = line.charAt(pos);
+                if (c == '"') {
+                    readString();
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+                pos++;
+            } while (depth > 0);
+        }
+
+        private void skipSpace() {
+            while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            return line.charAt(pos);
+        }
+
+        private void expect(char c) {
+            if (line.charAt(pos) != c) {
+                throw new IllegalStateException("期望" + c);
+            }
+            pos++;
+        }
+    }
+
+}
@@ -0,0 +1,745 @@
+package com.demo.video.util;
+
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MergeCellsRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Excel简单导入
+ * <br>基于HSSF事件模型及XSSF SAX解析逐行读取,不创建Workbook对象,内存占用与文件行数无关
+ * <br>每行以SimpleExport的set结构回调:{值,X轴跨度增量,Y轴跨度增量,null},被合并区域覆盖的单元格不回调,
+ * 空单元格以null值占位,因此读取到的行可以直接交给SimpleExport.createRow还原表格
+ * <br>每个sheet读取两遍:第一遍只收集合并区域(文件中合并区域位于单元格数据之后),第二遍回调行数据
+ */
+public class SimpleImport {
+
+    /**
+     * 行数据回调
+     */
+    public interface RowHandler {
+
+        /**
+         * sheet开始
+         *
+         * @param sheetIndex sheet序号,从0开始
+         * @param sheetName  sheet名称
+         */
+        void startSheet(int sheetIndex, String sheetName);
+
+        /**
+         * 行数据
+         * <br>没有单元格的空行也会回调(columns为空,有合并区域起始于该行时含合并单元格),行号连续,
+         * 直到sheet中最后一个有单元格或合并区域起始的行
+         *
+         * @param rowIndex 行号,从0开始
+         * @param columns  单元格数据,结构与SimpleExport.set的返回值相同
+         *                 <br>值类型:String、Double、Boolean、Date,空单元格及错误值为null
+         */
+        void handleRow(int rowIndex, List<Object[]> columns);
+
+        /**
+         * sheet结束
+         */
+        void endSheet();
+    }
+
+    /**
+     * 导入文件
+     */
+    private File file;
+
+    /**
+     * 是否为临时文件（由输入流转存）
+     */
+    private boolean isTempFile = false;
+
+    /**
+     * 简单导入工具构造
+     *
+     * @param file Excel文件(.xls或.xlsx)
+     */
+    public SimpleImport(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 简单导入工具构造
+     * <br>输入流先转存为临时文件,以便分两遍读取,close时删除
+     *
+     * @param is 输入流,例:上传文件
+     */
+    public SimpleImport(InputStream is) throws IOException {
+        this.file = File.createTempFile("import", ".tmp");
+        this.isTempFile = true;
+        OutputStream os = new FileOutputStream(file);
+        try {
+            IOUtils.copy(is, os);
+        } finally {
+            IOUtils.closeQuietly(os);
+        }
+    }
+
+    /**
+     * 读取所有sheet
+     *
+     * @param handler 行数据回调
+     */
+    public void read(RowHandler handler) throws IOException {
+        //根据文件头识别格式
+        byte[] header = new byte[4];
+        InputStream is = new FileInputStream(file);
+        try {
+            IOUtils.readFully(is, header);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+        if (header[0] == (byte) 0xD0 && header[1] == (byte) 0xCF && header[2] == (byte) 0x11 && header[3] == (byte) 0xE0) {
+            readHssf(handler);
+        } else if (header[0] == 'P' && header[1] == 'K') {
+            readXssf(handler);
+        } else {
+            throw new IOException("无法识别的Excel文件格式");
+        }
+    }
+
+    /**
+     * 删除临时文件
+     */
+    public void close() {
+        if (isTempFile) {
+            file.delete();
+        }
+    }
+
+    // ----------------------------------------Excel2003----------------------------------------
+
+    /**
+     * 读取Excel2003
+     *
+     * @param handler 行数据回调
+     */
+    private void readHssf(RowHandler handler) throws IOException {
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true);
+        try {
+            //第一遍:收集sheet名称及合并区域
+            HssfMergeListener mergeListener = new HssfMergeListener();
+            HSSFRequest mergeRequest = new HSSFRequest();
+            mergeRequest.addListenerForAllRecords(mergeListener);
+            new HSSFEventFactory().processWorkbookEvents(mergeRequest, fs.getRoot());
+
+            //第二遍:回调行数据
+            HssfRowListener rowListener = new HssfRowListener(new RowAssembler(handler), mergeListener);
+            FormatTrackingHSSFListener formatListener = new FormatTrackingHSSFListener(rowListener);
+            rowListener.formatListener = formatListener;
+            HSSFRequest rowRequest = new HSSFRequest();
+            rowRequest.addListenerForAllRecords(formatListener);
+            new HSSFEventFactory().processWorkbookEvents(rowRequest, fs.getRoot());
+        } finally {
+            fs.close();
+        }
+    }
+
+    /**
+     * Excel2003合并区域收集
+     */
+    private static class HssfMergeListener implements HSSFListener {
+
+        /**
+         * sheet定义
+         */
+        private List<BoundSheetRecord> boundSheets = new ArrayList<BoundSheetRecord>();
+
+        /**
+         * 各sheet合并区域
+         */
+        private List<List<CellRangeAddress>> merges = new ArrayList<List<CellRangeAddress>>();
+
+        @Override
+        public void processRecord(Record record) {
+            if (record instanceof BoundSheetRecord) {
+                boundSheets.add((BoundSheetRecord) record);
+            } else if (record instanceof BOFRecord && ((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                merges.add(new ArrayList<CellRangeAddress>());
+            } else if (record instanceof MergeCellsRecord) {
+                MergeCellsRecord mergeRecord = (MergeCellsRecord) record;
+                for (int i = 0; i < mergeRecord.getNumAreas(); i++) {
+                    merges.get(merges.size() - 1).add(mergeRecord.getAreaAt(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Excel2003行数据读取
+     */
+    private static class HssfRowListener implements HSSFListener {
+
+        private final RowAssembler assembler;
+
+        private final HssfMergeListener mergeListener;
+
+        /**
+         * 格式记录,用于识别日期
+         */
+        private FormatTrackingHSSFListener formatListener;
+
+        /**
+         * 按位置排序的sheet定义
+         */
+        private BoundSheetRecord[] sheets;
+
+        /**
+         * 共享字符串
+         */
+        private SSTRecord sst;
+
+        /**
+         * 是否使用1904日期系统
+         */
+        private boolean isDate1904 = false;
+
+        /**
+         * 当前sheet序号
+         */
+        private int sheetIndex = -1;
+
+        /**
+         * 是否在工作表中
+         */
+        private boolean inWorksheet = false;
+
+        /**
+         * 结果为字符串的公式,值在随后的StringRecord中
+         */
+        private FormulaRecord stringFormula;
+
+        HssfRowListener(RowAssembler assembler, HssfMergeListener mergeListener) {
+            this.assembler = assembler;
+            this.mergeListener = mergeListener;
+            this.sheets = BoundSheetRecord.orderByBofPosition(mergeListener.boundSheets);
+        }
+
+        @Override
+        public void processRecord(Record record) {
+            switch (record.getSid()) {
+                case BOFRecord.sid:
+                    if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                        sheetIndex++;
+                        inWorksheet = true;
+                        assembler.startSheet(sheetIndex, sheets[sheetIndex].getSheetname(), mergeListener.merges.get(sheetIndex));
+                    }
+                    break;
+                case EOFRecord.sid:
+                    if (inWorksheet) {
+                        inWorksheet = false;
+                        assembler.endSheet();
+                    }
+                    break;
+                case DateWindow1904Record.sid:
+                    isDate1904 = ((DateWindow1904Record) record).getWindowing() == 1;
+                    break;
+                case SSTRecord.sid:
+                    sst = (SSTRecord) record;
+                    break;
+                case LabelSSTRecord.sid:
+                    LabelSSTRecord labelSst = (LabelSSTRecord) record;
+                    assembler.cell(labelSst.getRow(), labelSst.getColumn(), sst.getString(labelSst.getSSTIndex()).getString());
+                    break;
+                case LabelRecord.sid:
+                    LabelRecord label = (LabelRecord) record;
+                    assembler.cell(label.getRow(), label.getColumn(), label.getValue());
+                    break;
+                case NumberRecord.sid:
+                    NumberRecord number = (NumberRecord) record;
+                    assembler.cell(number.getRow(), number.getColumn(), numberValue(number, number.getValue()));
+                    break;
+                case BoolErrRecord.sid:
+                    BoolErrRecord boolErr = (BoolErrRecord) record;
+                    assembler.cell(boolErr.getRow(), boolErr.getColumn(), boolErr.isBoolean() ? (Object) boolErr.getBooleanValue() : null);
+                    break;
+                case BlankRecord.sid:
+                    BlankRecord blank = (BlankRecord) record;
+                    assembler.cell(blank.getRow(), blank.getColumn(), null);
+                    break;
+                case MulBlankRecord.sid:
+                    MulBlankRecord mulBlank = (MulBlankRecord) record;
+                    for (int i = mulBlank.getFirstColumn(); i <= mulBlank.getLastColumn(); i++) {
+                        assembler.cell(mulBlank.getRow(), i, null);
+                    }
+                    break;
+                case FormulaRecord.sid:
+                    //公式取计算结果
+                    FormulaRecord formula = (FormulaRecord) record;
+                    if (formula.hasCachedResultString()) {
+                        stringFormula = formula;
+                    } else if (formula.getCachedResultType() == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_BOOLEAN) {
+                        assembler.cell(formula.getRow(), formula.getColumn(), formula.getCachedBooleanValue());
+                    } else if (formula.getCachedResultType() == org.apache.poi.ss.usermodel.Cell.CELL_TYPE_NUMERIC) {
+                        assembler.cell(formula.getRow(), formula.getColumn(), numberValue(formula, formula.getValue()));
+                    } else {
+                        assembler.cell(formula.getRow(), formula.getColumn(), null);
+                    }
+                    break;
+                case StringRecord.sid:
+                    if (stringFormula != null) {
+                        assembler.cell(stringFormula.getRow(), stringFormula.getColumn(), ((StringRecord) record).getString());
+                        stringFormula = null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * 数值转换,日期格式的数值转换为Date
+         *
+         * @param record 单元格记录
+         * @param value  数值
+         */
+        private Object numberValue(CellValueRecordInterface record, double value) {
+            int formatIndex = formatListener.getFormatIndex(record);
+            String formatString = formatListener.getFormatString(record);
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                return DateUtil.getJavaDate(value, isDate1904);
+            }
+            return value;
+        }
+    }
+
+    // ----------------------------------------Excel2007----------------------------------------
+
+    /**
+     * 读取Excel2007
+     *
+     * @param handler 行数据回调
+     */
+    private void readXssf(RowHandler handler) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sst = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            boolean isDate1904 = isDate1904(reader);
+            RowAssembler assembler = new RowAssembler(handler);
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            for (int sheetIndex = 0; sheets.hasNext(); sheetIndex++) {
+                InputStream is = sheets.next();
+                String sheetName = sheets.getSheetName();
+                IOUtils.closeQuietly(is);
+                //第一遍:收集合并区域
+                XssfMergeHandler mergeHandler = new XssfMergeHandler();
+                parse(reader, sheetIndex, mergeHandler);
+                //第二遍:回调行数据
+                assembler.startSheet(sheetIndex, sheetName, mergeHandler.merges);
+                parse(reader, sheetIndex, new XssfRowHandler(assembler, sst, styles, isDate1904));
+                assembler.endSheet();
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        } catch (SAXException e) {
+            throw new IOException(e);
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    /**
+     * 工作簿是否使用1904日期系统(workbook.xml中workbookPr的date1904属性)
+     *
+     * @param reader XSSF读取对象
+     */
+    private boolean isDate1904(XSSFReader reader) throws IOException, OpenXML4JException, SAXException {
+        final boolean[] isDate1904 = {false};
+        parse(reader.getWorkbookData(), new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if ("workbookPr".equals(localName)) {
+                    String date1904 = attributes.getValue("date1904");
+                    isDate1904[0] = "1".equals(date1904) || "true".equalsIgnoreCase(date1904);
+                }
+            }
+        });
+        return isDate1904[0];
+    }
+
+    /**
+     * 解析sheet
+     *
+     * @param reader     XSSF读取对象
+     * @param sheetIndex sheet序号
+     * @param handler    SAX解析回调
+     */
+    private void parse(XSSFReader reader, int sheetIndex, DefaultHandler handler)
+            throws IOException, OpenXML4JException, SAXException {
+        Iterator<InputStream> sheets = reader.getSheetsData();
+        InputStream is = null;
+        for (int i = 0; i <= sheetIndex; i++) {
+            IOUtils.closeQuietly(is);
+            is = sheets.next();
+        }
+        parse(is, handler);
+    }
+
+    /**
+     * 解析XML,完成后关闭输入流
+     *
+     * @param is      XML输入流
+     * @param handler SAX解析回调
+     */
+    private void parse(InputStream is, DefaultHandler handler) throws IOException, SAXException {
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XMLReader xmlReader = factory.newSAXParser().getXMLReader();
+            xmlReader.setContentHandler(handler);
+            xmlReader.parse(new InputSource(is));
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * Excel2007合并区域收集
+     */
+    private static class XssfMergeHandler extends DefaultHandler {
+
+        private List<CellRangeAddress> merges = new ArrayList<CellRangeAddress>();
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("mergeCell".equals(localName)) {
+                merges.add(CellRangeAddress.valueOf(attributes.getValue("ref")));
+            }
+        }
+    }
+
+    /**
+     * Excel2007行数据读取
+     */
+    private static class XssfRowHandler extends DefaultHandler {
+
+        private final RowAssembler assembler;
+
+        private final ReadOnlySharedStringsTable sst;
+
+        private final StylesTable styles;
+
+        /**
+         * 是否使用1904日期系统
+         */
+        private final boolean isDate1904;
+
+        /**
+         * ISO 8601日期解析(t="d"的单元格),第一次遇到时创建
+         */
+        private DatatypeFactory datatypeFactory;
+
+        /**
+         * 单元格文本
+         */
+        private StringBuilder text = new StringBuilder();
+
+        /**
+         * 是否在值元素中
+         */
+        private boolean inValue = false;
+
+        /**
+         * 当前行、列
+         */
+        private int row = -1;
+        private int col = -1;
+
+        /**
+         * 当前单元格类型及样式
+         */
+        private String type;
+        private String style;
+
+        XssfRowHandler(RowAssembler assembler, ReadOnlySharedStringsTable sst, StylesTable styles, boolean isDate1904) {
+            this.assembler = assembler;
+            this.sst = sst;
+            this.styles = styles;
+            this.isDate1904 = isDate1904;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("row".equals(localName)) {
+                String r = attributes.getValue("r");
+                row = r != null ? Integer.parseInt(r) - 1 : row + 1;
+                col = -1;
+            } else if ("c".equals(localName)) {
+                String r = attributes.getValue("r");
+                col = r != null ? new CellReference(r).getCol() : col + 1;
+                type = attributes.getValue("t");
+                style = attributes.getValue("s");
+                text.setLength(0);
+            } else if ("v".equals(localName) || "t".equals(localName)) {
+                inValue = true;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if ("v".equals(localName) || "t".equals(localName)) {
+                inValue = false;
+            } else if ("c".equals(localName)) {
+                assembler.cell(row, col, value());
+            }
+        }
+
+        /**
+         * 单元格值转换
+         */
+        private Object value() {
+            String val = text.toString();
+            if (val.length() == 0 && !"inlineStr".equals(type)) {
+                return null;
+            }
+            if ("s".equals(type)) {
+                return sst.getEntryAt(Integer.parseInt(val));
+            } else if ("inlineStr".equals(type) || "str".equals(type)) {
+                return val;
+            } else if ("b".equals(type)) {
+                return "1".equals(val);
+            } else if ("e".equals(type)) {
+                return null;
+            } else if ("d".equals(type)) {
+                return parseIsoDate(val);
+            }
+            double number = Double.parseDouble(val);
+            if (style != null) {
+                XSSFCellStyle cellStyle = styles.getStyleAt(Integer.parseInt(style));
+                if (cellStyle != null && DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString())
+                        && DateUtil.isValidExcelDate(number)) {
+                    return DateUtil.getJavaDate(number, isDate1904);
+                }
+            }
+            return number;
+        }
+
+        /**
+         * ISO 8601日期:无时区时按本地时区
+         */
+        private Date parseIsoDate(String val) {
+            try {
+                if (datatypeFactory == null) {
+                    datatypeFactory = DatatypeFactory.newInstance();
+                }
+                return datatypeFactory.newXMLGregorianCalendar(val.trim()).toGregorianCalendar().getTime();
+            } catch (DatatypeConfigurationException e) {
+                throw new IllegalStateException(e);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("日期格式错误:" + val, e);
+            }
+        }
+    }
+
+    // ----------------------------------------行数据组装----------------------------------------
+
+    /**
+     * 行数据组装
+     * <br>缓存当前行的单元格,换行时按合并区域转换为set结构并回调
+     */
+    private static class RowAssembler {
+
+        private final RowHandler handler;
+
+        /**
+         * 当前sheet合并区域,按起始行排序
+         */
+        private List<CellRangeAddress> merges;
+
+        /**
+         * 下一个待生效的合并区域
+         */
+        private int nextMerge;
+
+        /**
+         * 覆盖当前行的合并区域
+         */
+        private List<CellRangeAddress> activeMerges = new ArrayList<CellRangeAddress>();
+
+        /**
+         * 当前行号
+         */
+        private int row = -1;
+
+        /**
+         * 已回调的最后一行行号
+         */
+        private int lastRow = -1;
+
+        /**
+         * 当前行单元格:按列排序
+         */
+        private TreeMap<Integer, Object> cells = new TreeMap<Integer, Object>();
+
+        RowAssembler(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        void startSheet(int sheetIndex, String sheetName, List<CellRangeAddress> sheetMerges) {
+            merges = new ArrayList<CellRangeAddress>(sheetMerges);
+            Collections.sort(merges, new Comparator<CellRangeAddress>() {
+                @Override
+                public int compare(CellRangeAddress r1, CellRangeAddress r2) {
+                    return r1.getFirstRow() - r2.getFirstRow();
+                }
+            });
+            nextMerge = 0;
+            activeMerges.clear();
+            row = -1;
+            lastRow = -1;
+            cells.clear();
+            handler.startSheet(sheetIndex, sheetName);
+        }
+
+        void cell(int cellRow, int cellCol, Object value) {
+            if (cellRow != row) {
+                flush();
+                //没有单元格记录的空行按空行回调,保持行号连续
+                for (int emptyRow = lastRow + 1; emptyRow < cellRow; emptyRow++) {
+                    row = emptyRow;
+                    flush();
+                }
+                row = cellRow;
+            }
+            //同一位置以有值的记录为准
+            if (value != null || !cells.containsKey(cellCol)) {
+                cells.put(cellCol, value);
+            }
+        }
+
+        void endSheet() {
+            flush();
+            //最后一个单元格之后的行上还有合并区域:按空行回调到最后一个合并区域的起始行
+            int lastAnchor = lastRow;
+            for (int i = nextMerge; i < merges.size(); i++) {
+                lastAnchor = Math.max(lastAnchor, merges.get(i).getFirstRow());
+            }
+            for (int emptyRow = lastRow + 1; emptyRow <= lastAnchor; emptyRow++) {
+                row = emptyRow;
+                flush();
+            }
+            handler.endSheet();
+        }
+
+        /**
+         * 回调当前行
+         */
+        private void flush() {
+            if (row < 0) {
+                return;
+            }
+            //刷新覆盖当前行的合并区域
+            for (Iterator<CellRangeAddress> it = activeMerges.iterator(); it.hasNext(); ) {
+                if (it.next().getLastRow() < row) {
+                    it.remove();
+                }
+            }
+            while (nextMerge < merges.size() && merges.get(nextMerge).getFirstRow() <= row) {
+                CellRangeAddress merge = merges.get(nextMerge++);
+                if (merge.getLastRow() >= row) {
+                    activeMerges.add(merge);
+                }
+            }
+            List<Object[]> columns = new ArrayList<Object[]>();
+            int lastCol = cells.isEmpty() ? -1 : cells.lastKey();
+            //起始于当前行的合并区域即使起始单元格没有记录也要回调
+            for (CellRangeAddress merge : activeMerges) {
+                if (merge.getFirstRow() == row) {
+                    lastCol = Math.max(lastCol, merge.getFirstColumn());
+                }
+            }
+            for (int col = 0; col <= lastCol; col++) {
+                CellRangeAddress merge = findMerge(col);
+                if (merge == null) {
+                    columns.add(new Object[]{cells.get(col), 0, 0, null});
+                } else if (merge.getFirstRow() == row && merge.getFirstColumn() == col) {
+                    columns.add(new Object[]{cells.get(col), merge.getLastColumn() - col, merge.getLastRow() - row, null});
+                }
+                //被合并区域覆盖的单元格不回调
+            }
+            //去掉行尾空单元格
+            while (!columns.isEmpty() && columns.get(columns.size() - 1)[0] == null
+                    && (Integer) columns.get(columns.size() - 1)[1] == 0 && (Integer) columns.get(columns.size() - 1)[2] == 0) {
+                columns.remove(columns.size() - 1);
+            }
+            handler.handleRow(row, columns);
+            cells.clear();
+            lastRow = row;
+            row = -1;
+        }
+
+        /**
+         * 查找覆盖指定列的合并区域
+         */
+        private CellRangeAddress findMerge(int col) {
+            for (CellRangeAddress merge : activeMerges) {
+                if (merge.getFirstColumn() <= col && merge.getLastColumn() >= col) {
+                    return merge;
+                }
+            }
+            return null;
+        }
+    }
+
+}
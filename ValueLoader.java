@@ -0,0 +1,18 @@
+package com.demo.video.util;
+
+/**
+ * 按键延迟加载的单元格值
+ * <br>通过SimpleExport.lookup生成set方法的值,写入单元格时才加载;启用值缓存后相同加载器、相同键只加载一次
+ * <br>相同键必须返回相同的值;启用导出缓存且未指定缓存键时,生成摘要会加载全部值,结果用于写入单元格,不重复加载
+ */
+public interface ValueLoader<K> {
+
+    /**
+     * 加载单元格值
+     *
+     * @param key 键
+     * @return 单元格值
+     */
+    Object load(K key);
+
+}
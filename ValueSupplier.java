@@ -0,0 +1,17 @@
+package com.demo.video.util;
+
+/**
+ * 延迟计算的单元格值
+ * <br>作为set方法的值传入,写入单元格时才计算,计算结果可以是set支持的任意值(含下拉选项、图片)
+ * <br>在导出线程中调用,每个单元格调用一次;启用导出缓存且未指定缓存键时在生成摘要时调用,结果用于写入单元格
+ */
+public interface ValueSupplier {
+
+    /**
+     * 计算单元格值
+     *
+     * @return 单元格值
+     */
+    Object get();
+
+}